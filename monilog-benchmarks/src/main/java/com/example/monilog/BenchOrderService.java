@@ -0,0 +1,26 @@
+package com.example.monilog;
+
+/**
+ * 基准测试中被切面拦截的业务接口
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+@MoniLog(LogPoint.user_define)
+@MoniLogTags(value = {"channel", "{channel}"}, metricName = "bench_order")
+interface BenchOrderService {
+    Object queryOrder(String request);
+
+    class Impl implements BenchOrderService {
+        private final Object result;
+
+        Impl(Object result) {
+            this.result = result;
+        }
+
+        @Override
+        public Object queryOrder(String request) {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.monilog;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.google.protobuf.util.JsonFormat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试使用的典型载荷：小/大JSON、普通POJO，以及grpc拦截器中由protobuf转换得到的JSON
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+final class BenchmarkPayloads {
+    static final String SMALL_JSON = "smallJson";
+    static final String LARGE_JSON = "largeJson";
+    static final String POJO = "pojo";
+    static final String PROTOBUF = "protobuf";
+
+    private BenchmarkPayloads() {
+    }
+
+    static Object of(String type) {
+        switch (type) {
+            case SMALL_JSON:
+                return smallJson();
+            case LARGE_JSON:
+                return largeJson(200);
+            case POJO:
+                return pojo(20);
+            case PROTOBUF:
+                return protobuf(50);
+            default:
+                throw new IllegalArgumentException("unknown payload type: " + type);
+        }
+    }
+
+    static JSONObject request() {
+        JSONObject body = new JSONObject();
+        body.put("userId", 10086L);
+        body.put("orderNo", "SO202403200001");
+        body.put("channel", "app");
+        JSONObject req = new JSONObject();
+        req.put("body", body);
+        req.put("query", "page=1&size=20");
+        req.put("originUrl", "/api/v1/orders/10086");
+        return req;
+    }
+
+    static MoniLogParams newParams(LogPoint logPoint, Object[] input, Object output, boolean success) {
+        MoniLogParams p = new MoniLogParams();
+        p.setServiceCls(BenchOrderService.class);
+        p.setLogPoint(logPoint);
+        p.setService("BenchOrderService");
+        p.setAction("queryOrder");
+        p.setSuccess(success);
+        p.setMsgCode(success ? ErrorEnum.SUCCESS.name() : "ORDER_NOT_FOUND");
+        p.setMsgInfo(success ? ErrorEnum.SUCCESS.getMsg() : "order not found");
+        p.setCost(12);
+        p.setInput(input);
+        p.setOutput(output);
+        p.setTags(new String[]{"method", "GET", "url", "/api/v1/orders/{n}"});
+        return p;
+    }
+
+    private static JSONObject smallJson() {
+        JSONObject data = new JSONObject();
+        data.put("id", 10086L);
+        data.put("status", "PAID");
+        JSONObject ret = new JSONObject();
+        ret.put("code", 0);
+        ret.put("msg", "success");
+        ret.put("data", data);
+        return ret;
+    }
+
+    private static JSONObject largeJson(int items) {
+        JSONArray list = new JSONArray();
+        for (int i = 0; i < items; i++) {
+            JSONObject item = new JSONObject();
+            item.put("skuId", 100000L + i);
+            item.put("title", "benchmark sku title " + i);
+            item.put("price", new BigDecimal("199.90"));
+            item.put("quantity", i % 5 + 1);
+            item.put("attrs", JSON.parseObject("{\"color\":\"black\",\"size\":\"XL\",\"warehouse\":\"BJ-01\"}"));
+            list.add(item);
+        }
+        JSONObject data = new JSONObject();
+        data.put("orderNo", "SO202403200001");
+        data.put("items", list);
+        JSONObject ret = new JSONObject();
+        ret.put("code", 0);
+        ret.put("msg", "success");
+        ret.put("data", data);
+        return ret;
+    }
+
+    private static BenchResult pojo(int items) {
+        List<BenchOrderItem> list = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            list.add(new BenchOrderItem(100000L + i, "benchmark sku title " + i, new BigDecimal("199.90"), i % 5 + 1));
+        }
+        return new BenchResult(0, "success", list);
+    }
+
+    private static JSONObject protobuf(int items) {
+        ListValue.Builder list = ListValue.newBuilder();
+        for (int i = 0; i < items; i++) {
+            Struct item = Struct.newBuilder()
+                    .putFields("skuId", Value.newBuilder().setNumberValue(100000 + i).build())
+                    .putFields("title", Value.newBuilder().setStringValue("benchmark sku title " + i).build())
+                    .putFields("quantity", Value.newBuilder().setNumberValue(i % 5 + 1).build())
+                    .build();
+            list.addValues(Value.newBuilder().setStructValue(item).build());
+        }
+        Struct message = Struct.newBuilder()
+                .putFields("code", Value.newBuilder().setNumberValue(0).build())
+                .putFields("msg", Value.newBuilder().setStringValue("success").build())
+                .putFields("items", Value.newBuilder().setListValue(list).build())
+                .build();
+        try {
+            // 与grpc拦截器保持一致：protobuf消息先转成json再交给monilog处理
+            return JSON.parseObject(JsonFormat.printer().omittingInsignificantWhitespace().print(message));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class BenchResult {
+        private final int code;
+        private final String msg;
+        private final List<BenchOrderItem> data;
+
+        BenchResult(int code, String msg, List<BenchOrderItem> data) {
+            this.code = code;
+            this.msg = msg;
+            this.data = data;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getMsg() {
+            return msg;
+        }
+
+        public List<BenchOrderItem> getData() {
+            return data;
+        }
+    }
+
+    public static class BenchOrderItem {
+        private final long skuId;
+        private final String title;
+        private final BigDecimal price;
+        private final int quantity;
+
+        BenchOrderItem(long skuId, String title, BigDecimal price, int quantity) {
+            this.skuId = skuId;
+            this.title = title;
+            this.price = price;
+            this.quantity = quantity;
+        }
+
+        public long getSkuId() {
+            return skuId;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.monilog;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * 基准测试公共环境：启动一个只包含monilog核心bean的最小spring容器
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+final class BenchmarkSupport {
+    private static volatile AnnotationConfigApplicationContext context;
+
+    private BenchmarkSupport() {
+    }
+
+    static synchronized void bootstrap() {
+        if (context != null) {
+            return;
+        }
+        System.setProperty("spring.application.name", "monilog-benchmarks");
+        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext();
+        ctx.registerBean(SpringUtils.class);
+        ctx.registerBean(MoniLogProperties.class);
+        ctx.registerBean(MoniLogPrinter.class, DefaultMoniLogPrinter::new);
+        ctx.refresh();
+        context = ctx;
+    }
+
+    static MoniLogProperties properties() {
+        bootstrap();
+        return context.getBean(MoniLogProperties.class);
+    }
+
+    static MoniLogPrinter printer() {
+        bootstrap();
+        return context.getBean(MoniLogPrinter.class);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.monilog;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 详情日志输出开销，主要是input/output的序列化与截断
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DefaultMoniLogPrinterBenchmark {
+    @Param({BenchmarkPayloads.SMALL_JSON, BenchmarkPayloads.LARGE_JSON, BenchmarkPayloads.POJO, BenchmarkPayloads.PROTOBUF})
+    private String payload;
+
+    private MoniLogPrinter printer;
+    private Object[] input;
+    private Object output;
+
+    @Setup
+    public void setup() {
+        printer = BenchmarkSupport.printer();
+        input = new Object[]{BenchmarkPayloads.request()};
+        output = BenchmarkPayloads.of(payload);
+    }
+
+    @Benchmark
+    public MoniLogParams logDetail() {
+        MoniLogParams p = BenchmarkPayloads.newParams(LogPoint.http_server, input, output, false);
+        printer.logDetail(p);
+        return p;
+    }
+}
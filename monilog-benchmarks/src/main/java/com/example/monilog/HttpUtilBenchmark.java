@@ -0,0 +1,37 @@
+package com.example.monilog;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * url路径参数归一化开销
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpUtilBenchmark {
+    @Param({
+            "http://order-service/api/v1/orders/list?page=1",
+            "http://order-service/api/v1/orders/1234567/detail",
+            "http://order-service/api/v1/users/x7Kp9QwZ2mLr/profile",
+            "https://static.example.com/assets/img/banner_20240320.png"
+    })
+    private String url;
+
+    @Benchmark
+    public String extractPathWithoutPathParams() {
+        return HttpUtil.extractPathWithoutPathParams(url);
+    }
+
+    @Benchmark
+    public double calcAvgNormalFrequence() {
+        return RandomStringDetector.calcAvgNormalFrequence("x7Kp9QwZ2mLrTn");
+    }
+}
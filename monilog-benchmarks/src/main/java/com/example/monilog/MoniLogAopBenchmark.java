@@ -0,0 +1,84 @@
+package com.example.monilog;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+
+/**
+ * 切面拦截开销：上下文构建、结果解析、自定义tag处理及日志输出
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoniLogAopBenchmark {
+    @Param({BenchmarkPayloads.SMALL_JSON, BenchmarkPayloads.LARGE_JSON, BenchmarkPayloads.POJO, BenchmarkPayloads.PROTOBUF})
+    private String payload;
+
+    private MethodInvocation invocation;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSupport.bootstrap();
+        BenchOrderService target = new BenchOrderService.Impl(BenchmarkPayloads.of(payload));
+        Method method = BenchOrderService.class.getMethod("queryOrder", String.class);
+        Object[] args = new Object[]{BenchmarkPayloads.request().toJSONString()};
+        invocation = new FixedMethodInvocation(method, target, args);
+    }
+
+    @Benchmark
+    public Object processAround() throws Throwable {
+        return MoniLogAop.processAround(invocation, null, null);
+    }
+
+    @Benchmark
+    public Object baseline() throws Throwable {
+        return invocation.proceed();
+    }
+
+    static class FixedMethodInvocation implements MethodInvocation {
+        private final Method method;
+        private final Object target;
+        private final Object[] args;
+
+        FixedMethodInvocation(Method method, Object target, Object[] args) {
+            this.method = method;
+            this.target = target;
+            this.args = args;
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public Object[] getArguments() {
+            return args;
+        }
+
+        @Override
+        public Object proceed() throws Throwable {
+            return ((BenchOrderService) target).queryOrder((String) args[0]);
+        }
+
+        @Override
+        public Object getThis() {
+            return target;
+        }
+
+        @Override
+        public AccessibleObject getStaticPart() {
+            return method;
+        }
+    }
+}
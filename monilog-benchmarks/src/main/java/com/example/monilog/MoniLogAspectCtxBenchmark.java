@@ -0,0 +1,49 @@
+package com.example.monilog;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import java.lang.reflect.Method;
+
+/**
+ * 切面上下文的构建开销：注解查找、接口定位、tag解析
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoniLogAspectCtxBenchmark {
+    private MoniLogAop.InvocationProxy interfaceMethod;
+    private MoniLogAop.InvocationProxy implMethod;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSupport.bootstrap();
+        BenchOrderService target = new BenchOrderService.Impl(BenchmarkPayloads.of(BenchmarkPayloads.SMALL_JSON));
+        Object[] args = new Object[]{"{}"};
+        interfaceMethod = proxy(BenchOrderService.class.getMethod("queryOrder", String.class), target, args);
+        implMethod = proxy(BenchOrderService.Impl.class.getMethod("queryOrder", String.class), target, args);
+    }
+
+    @Benchmark
+    public MoniLogAspectCtx abstractMethod() {
+        return new MoniLogAspectCtx(interfaceMethod);
+    }
+
+    @Benchmark
+    public MoniLogAspectCtx concreteMethod() {
+        return new MoniLogAspectCtx(implMethod);
+    }
+
+    private static MoniLogAop.InvocationProxy proxy(Method method, Object target, Object[] args) {
+        MethodInvocation invocation = new MoniLogAopBenchmark.FixedMethodInvocation(method, target, args);
+        return MoniLogAop.InvocationProxy.of(invocation);
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.monilog;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 在IDE中直接运行全部基准测试，并附带GC/内存分配统计。
+ * 命令行可使用: java -jar target/benchmarks.jar -prof gc [正则]
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+public class MoniLogBenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : MoniLogBenchmarkRunner.class.getPackage().getName() + ".*Benchmark";
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.monilog;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MoniLogUtil.log全流程开销：打点、慢调用判定、摘要及详情日志
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoniLogUtilBenchmark {
+    @Param({BenchmarkPayloads.SMALL_JSON, BenchmarkPayloads.LARGE_JSON, BenchmarkPayloads.POJO, BenchmarkPayloads.PROTOBUF})
+    private String payload;
+    /**
+     * success=true时详情日志默认不输出，false时会输出详情日志
+     */
+    @Param({"true", "false"})
+    private boolean success;
+
+    private Object[] input;
+    private Object output;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.bootstrap();
+        input = new Object[]{BenchmarkPayloads.request()};
+        output = BenchmarkPayloads.of(payload);
+    }
+
+    @Benchmark
+    public MoniLogParams log() {
+        MoniLogParams p = BenchmarkPayloads.newParams(LogPoint.http_server, input, output, success);
+        MoniLogUtil.log(p);
+        return p;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.monilog;
+
+import io.micrometer.core.instrument.Timer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指标上报开销：计数器与耗时统计，分别覆盖已注册与不断新增tag组合的场景。新增tag组合时先注册新指标，
+ * 指标数达到上限(MonilogMetrics.MAX_METERS)后走超限丢弃的路径，测得的是两者的平均值
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MonilogMetricsBenchmark {
+    private static final String NAME = MonilogMetrics.METRIC_PREFIX + "benchmark";
+    private static final int MSG_CODE_INDEX = 13;
+    private final String[] tags = new String[]{"result", "success", "application", "monilog-benchmarks", "logPoint", "http_server",
+            "env", "test", "service", "BenchOrderService", "action", "queryOrder", "msgCode", "SUCCESS", "exception", "null"};
+
+    private final String[] newTags = tags.clone();
+    private long seq;
+
+    @Benchmark
+    public void record() {
+        MonilogMetrics.record(NAME + MonitorType.RECORD.getMark(), tags);
+    }
+
+    /**
+     * 每次调用使用新的msgCode
+     */
+    @Benchmark
+    public void recordNewTags() {
+        newTags[MSG_CODE_INDEX] = "E" + seq++;
+        MonilogMetrics.record(NAME + MonitorType.RECORD.getMark(), newTags);
+    }
+
+    @Benchmark
+    public void eventDuration() {
+        Timer timer = MonilogMetrics.eventDuration(NAME + MonitorType.TIMER.getMark(), tags);
+        if (timer != null) {
+            timer.record(12, TimeUnit.MILLISECONDS);
+        }
+    }
+}
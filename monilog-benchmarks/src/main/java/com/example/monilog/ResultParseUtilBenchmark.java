@@ -0,0 +1,40 @@
+package com.example.monilog;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调用结果解析开销：默认表达式与自定义表达式
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultParseUtilBenchmark {
+    @Param({BenchmarkPayloads.SMALL_JSON, BenchmarkPayloads.LARGE_JSON, BenchmarkPayloads.POJO, BenchmarkPayloads.PROTOBUF})
+    private String payload;
+
+    private Object result;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.bootstrap();
+        result = BenchmarkPayloads.of(payload);
+    }
+
+    @Benchmark
+    public ParsedResult defaultExpr() {
+        return ResultParseUtil.parseResult(result, null, null, null, null, null);
+    }
+
+    @Benchmark
+    public ParsedResult customExpr() {
+        return ResultParseUtil.parseResult(result, ResultParseStrategy.IfSuccess, null, "$.code==0", "$.code", "$.msg");
+    }
+}
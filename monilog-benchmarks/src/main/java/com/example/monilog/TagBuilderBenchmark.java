@@ -0,0 +1,59 @@
+package com.example.monilog;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指标tag构建开销，与MoniLogUtil.doMonitor中的用法保持一致
+ *
+ * @author yp
+ * @date 2024/03/20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TagBuilderBenchmark {
+    private final String[] tags = new String[]{"method", "GET", "url", "/api/v1/orders/{n}"};
+    private final String[] userTags = new String[]{"channel", "app"};
+
+    @Benchmark
+    public String[] systemTags() {
+        TagBuilder systemTags = newSystemTags();
+        try {
+            return systemTags.toArray();
+        } finally {
+            systemTags.release();
+        }
+    }
+
+    @Benchmark
+    public void doMonitorTags(Blackhole bh) {
+        TagBuilder systemTags = newSystemTags();
+        try {
+            systemTags.add(tags);
+            bh.consume(systemTags.buffer());
+            bh.consume(systemTags.size());
+            systemTags.add(userTags).add(tags);
+            bh.consume(systemTags.size());
+        } finally {
+            systemTags.release();
+        }
+    }
+
+    @Benchmark
+    public String[] chainedTags() {
+        return TagBuilder.of("result", "success").add("application", "monilog-benchmarks").add("logPoint", "http_server")
+                .add("env", "test").add("service", "BenchOrderService").add("action", "queryOrder")
+                .add("msgCode", "SUCCESS").add("exception", "null").add(tags).toArray();
+    }
+
+    private static TagBuilder newSystemTags() {
+        return TagBuilder.systemTags("success", "monilog-benchmarks", "http_server", "test",
+                "BenchOrderService", "queryOrder", "SUCCESS", "null");
+    }
+}
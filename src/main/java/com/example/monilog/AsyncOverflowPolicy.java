@@ -0,0 +1,22 @@
+package com.example.monilog;
+
+/**
+ * 异步日志队列写满时的处理策略
+ *
+ * @author yp
+ * @date 2024/03/18
+ */
+public enum AsyncOverflowPolicy {
+    /**
+     * 丢弃详情日志：由调用线程同步完成打点与摘要日志，仅放弃开销最大的详情日志
+     */
+    dropDetailKeepDigest,
+    /**
+     * 丢弃队列中最旧的事件，为当前事件腾出位置
+     */
+    dropOldest,
+    /**
+     * 阻塞调用线程直到队列有空位，超过等待时间后按dropDetailKeepDigest处理
+     */
+    block
+}
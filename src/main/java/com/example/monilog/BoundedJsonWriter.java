@@ -0,0 +1,318 @@
+package com.example.monilog;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.JavaBeanSerializer;
+import com.alibaba.fastjson.serializer.ObjectSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+
+import java.lang.reflect.Array;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 有长度上限的JSON序列化：边遍历对象图边写入线程复用的char缓冲区，写满即停止遍历，
+ * 因此格式化的内存与CPU开销只与maxTextLen相关，而与参数本身的大小无关。
+ * Map/集合/数组/JavaBean由本类逐层展开，其余类型交由fastjson序列化；未触发元素个数与深度上限时，输出与"先完整序列化再截断"一致
+ *
+ * @author yp
+ * @date 2024/03/27
+ */
+final class BoundedJsonWriter {
+    private static final String ELLIPSIS = "...";
+    /**
+     * 线程复用的缓冲区上限(字符数)，更大的缓冲区仅本次使用
+     */
+    private static final int MAX_REUSE_BUF_SIZE = 64 * 1024;
+    private static final ThreadLocal<char[]> BUF = new ThreadLocal<>();
+    private static final Stop STOP = new Stop();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 只计数时为null
+     */
+    private final char[] buf;
+    /**
+     * 可写入的最大字符数，写满说明已超出maxTextLen
+     */
+    private final int limit;
+    private final int maxCollectionSize;
+    private final int maxDepth;
+    private int count;
+
+    private BoundedJsonWriter(char[] buf, int limit, int maxCollectionSize, int maxDepth) {
+        this.buf = buf;
+        this.limit = limit;
+        this.maxCollectionSize = maxCollectionSize;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * 序列化对象，结果超过maxTextLen时截断为前(maxTextLen-3)个字符并追加"..."
+     */
+    static String toJSONString(Object o, int maxTextLen, int maxCollectionSize, int maxDepth) {
+        int maxLen = Math.max(maxTextLen, ELLIPSIS.length());
+        // 多写一个字符用于判断是否超长
+        int limit = maxLen + 1;
+        char[] buf = BUF.get();
+        boolean reuse = limit <= MAX_REUSE_BUF_SIZE;
+        if (reuse && buf != null && buf.length >= limit) {
+            // 取出后置空，防止fastjson自定义序列化中的重入调用共用同一缓冲区
+            BUF.set(null);
+        } else {
+            buf = new char[reuse ? Math.max(limit, 1024) : limit];
+        }
+        try {
+            BoundedJsonWriter writer = new BoundedJsonWriter(buf, limit, maxCollectionSize <= 0 ? Integer.MAX_VALUE : maxCollectionSize, maxDepth <= 0 ? Integer.MAX_VALUE : maxDepth);
+            try {
+                writer.writeValue(o, 0);
+            } catch (Stop ignore) {
+                // 已写满
+            }
+            if (writer.count > maxLen) {
+                return new String(buf, 0, maxLen - ELLIPSIS.length()) + ELLIPSIS;
+            }
+            return new String(buf, 0, writer.count);
+        } finally {
+            if (reuse) {
+                BUF.set(buf);
+            }
+        }
+    }
+
+    /**
+     * 只计算序列化后的字符数，不保存内容也不分配缓冲区，达到limit即停止
+     *
+     * @return 序列化后的字符数，超过limit时返回limit
+     */
+    static int measure(Object o, int limit, int maxCollectionSize, int maxDepth) {
+        BoundedJsonWriter writer = new BoundedJsonWriter(null, Math.max(limit, 1), maxCollectionSize <= 0 ? Integer.MAX_VALUE : maxCollectionSize, maxDepth <= 0 ? Integer.MAX_VALUE : maxDepth);
+        try {
+            writer.writeValue(o, 0);
+        } catch (Stop ignore) {
+            // 已达到limit
+        }
+        return writer.count;
+    }
+
+    private void writeValue(Object o, int depth) {
+        if (o instanceof LazyLogArg) {
+            o = ((LazyLogArg) o).get();
+        }
+        if (o == null) {
+            write("null");
+            return;
+        }
+        if (o instanceof String) {
+            writeString((String) o);
+            return;
+        }
+        if (depth >= maxDepth) {
+            writeString(ELLIPSIS);
+            return;
+        }
+        if (o instanceof Map) {
+            writeMap((Map<?, ?>) o, depth);
+            return;
+        }
+        if (o instanceof Collection) {
+            writeIterator(((Collection<?>) o).iterator(), ((Collection<?>) o).size(), depth);
+            return;
+        }
+        Class<?> cls = o.getClass();
+        if (cls.isArray()) {
+            writeArray(o, cls, depth);
+            return;
+        }
+        if (!(o instanceof Throwable)) {
+            Map<String, Object> fields = getBeanFields(o, cls);
+            if (fields != null) {
+                writeMap(fields, depth);
+                return;
+            }
+        }
+        write(JSON.toJSONString(o));
+    }
+
+    private void writeMap(Map<?, ?> map, int depth) {
+        write('{');
+        boolean first = true;
+        int n = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            // 与fastjson默认行为一致，不输出值为null的属性
+            if (value == null) {
+                continue;
+            }
+            if (!first) {
+                write(',');
+            }
+            if (n++ >= maxCollectionSize) {
+                writeString(ELLIPSIS);
+                write(':');
+                writeString(map.size() + " entries");
+                break;
+            }
+            first = false;
+            Object key = entry.getKey();
+            if (key instanceof String) {
+                writeString((String) key);
+            } else {
+                write(JSON.toJSONString(key));
+            }
+            write(':');
+            writeValue(value, depth + 1);
+        }
+        write('}');
+    }
+
+    private void writeIterator(Iterator<?> it, int size, int depth) {
+        write('[');
+        int n = 0;
+        while (it.hasNext()) {
+            if (n > 0) {
+                write(',');
+            }
+            if (n++ >= maxCollectionSize) {
+                writeString("...(" + size + " items)");
+                break;
+            }
+            writeValue(it.next(), depth + 1);
+        }
+        write(']');
+    }
+
+    private void writeArray(Object array, Class<?> cls, int depth) {
+        if (cls == byte[].class) {
+            writeBytes((byte[]) array);
+            return;
+        }
+        if (cls == char[].class) {
+            writeString(new String((char[]) array, 0, Math.min(((char[]) array).length, limit)));
+            return;
+        }
+        int len = Array.getLength(array);
+        write('[');
+        for (int i = 0; i < len; i++) {
+            if (i > 0) {
+                write(',');
+            }
+            if (i >= maxCollectionSize) {
+                writeString("...(" + len + " items)");
+                break;
+            }
+            writeValue(Array.get(array, i), depth + 1);
+        }
+        write(']');
+    }
+
+    /**
+     * fastjson将byte[]输出为base64字符串，这里只编码能写下的部分
+     */
+    private void writeBytes(byte[] bytes) {
+        if (buf == null) {
+            // 只计数时无需编码
+            write('"');
+            count = (int) Math.min(limit, count + (bytes.length + 2L) / 3 * 4);
+            if (count >= limit) {
+                throw STOP;
+            }
+            write('"');
+            return;
+        }
+        int maxBytes = (int) Math.min(bytes.length, (limit - count) * 3L / 4 + 3);
+        write('"');
+        if (maxBytes == bytes.length) {
+            write(Base64.getEncoder().encodeToString(bytes));
+        } else {
+            byte[] part = new byte[maxBytes - maxBytes % 3];
+            System.arraycopy(bytes, 0, part, 0, part.length);
+            write(Base64.getEncoder().encodeToString(part));
+        }
+        write('"');
+    }
+
+    private static Map<String, Object> getBeanFields(Object o, Class<?> cls) {
+        try {
+            ObjectSerializer serializer = SerializeConfig.getGlobalInstance().getObjectWriter(cls);
+            return serializer instanceof JavaBeanSerializer ? ((JavaBeanSerializer) serializer).getFieldValuesMap(o) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private void writeString(String s) {
+        write('"');
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                write('\\');
+                write(c);
+            } else if (c < 0x20) {
+                writeControlChar(c);
+            } else {
+                write(c);
+            }
+        }
+        write('"');
+    }
+
+    private void writeControlChar(char c) {
+        write('\\');
+        switch (c) {
+            case '\b':
+                write('b');
+                break;
+            case '\f':
+                write('f');
+                break;
+            case '\n':
+                write('n');
+                break;
+            case '\r':
+                write('r');
+                break;
+            case '\t':
+                write('t');
+                break;
+            default:
+                write('u');
+                write('0');
+                write('0');
+                write(HEX[c >> 4]);
+                write(HEX[c & 0xf]);
+                break;
+        }
+    }
+
+    private void write(String s) {
+        int len = Math.min(s.length(), limit - count);
+        if (buf != null) {
+            s.getChars(0, len, buf, count);
+        }
+        count += len;
+        if (count >= limit) {
+            throw STOP;
+        }
+    }
+
+    private void write(char c) {
+        if (buf != null) {
+            buf[count] = c;
+        }
+        count++;
+        if (count >= limit) {
+            throw STOP;
+        }
+    }
+
+    /**
+     * 写满时用于终止遍历，预先分配且不填充堆栈
+     */
+    private static final class Stop extends RuntimeException {
+        Stop() {
+            super("monilog bounded json writer is full", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.monilog;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.util.Arrays;
+
+/**
+ * 有上限的字节捕获缓冲区：请求/响应流经过时把字节复制进来，超过上限的部分只计数不保存。
+ * 缓冲区按需扩容，可在线程内复用；只有日志输出时才解码，且最多解码指定的字符数
+ *
+ * @author yp
+ * @date 2024/04/03
+ */
+final class CaptureBuffer {
+    static final String BINARY_DATA = "Binary data";
+    private static final int INIT_BUF_SIZE = 1024;
+    /**
+     * 线程复用的缓冲区上限(字节数)，更大的缓冲区仅本次使用
+     */
+    private static final int MAX_REUSE_BUF_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> BUF_POOL = new ThreadLocal<>();
+
+    private final int limit;
+    /**
+     * 缓冲区是否取自(并归还到)线程复用池，内容可能在其它线程读取时(如异步输出日志)须为false
+     */
+    private final boolean pooled;
+    private byte[] buf;
+    private int count;
+    /**
+     * 流经的总字节数，包含超出上限未保存的部分
+     */
+    private long total;
+    private boolean released;
+
+    CaptureBuffer(int limit, boolean pooled) {
+        this.limit = Math.max(limit, 0);
+        this.pooled = pooled;
+    }
+
+    void write(int b) {
+        total++;
+        if (released || count >= limit) {
+            return;
+        }
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    void write(byte[] b, int off, int len) {
+        if (len <= 0) {
+            return;
+        }
+        total += len;
+        if (released) {
+            return;
+        }
+        len = Math.min(len, limit - count);
+        if (len <= 0) {
+            return;
+        }
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * 记录流经但不保存的字节数，只用于判断是否被截断
+     */
+    void skip(long n) {
+        if (n > 0) {
+            total += n;
+        }
+    }
+
+    /**
+     * 丢弃已保存的内容，如响应被reset时
+     */
+    void reset() {
+        if (released) {
+            return;
+        }
+        count = 0;
+        total = 0;
+    }
+
+    /**
+     * 已保存的字节，有效长度见{@link #size()}
+     */
+    byte[] array() {
+        return buf;
+    }
+
+    int size() {
+        return count;
+    }
+
+    long total() {
+        return total;
+    }
+
+    /**
+     * 内容是否超出上限而被截断
+     */
+    boolean isTruncated() {
+        return total > count;
+    }
+
+    boolean isFull() {
+        return released || count >= limit;
+    }
+
+    /**
+     * 解码已保存的内容，最多解码maxChars个字符；无法解码时认为是二进制的
+     */
+    String decode(Charset charset, int maxChars) {
+        return decode(buf, count, isTruncated(), charset, maxChars);
+    }
+
+    static String decode(byte[] bytes, int len, boolean partial, Charset charset, int maxChars) {
+        if (bytes == null || len <= 0) {
+            return "";
+        }
+        CharsetDecoder decoder = charset.newDecoder();
+        CharBuffer out = CharBuffer.allocate(Math.min(len, Math.max(maxChars, 1)));
+        // 被截断时末尾可能是不完整的多字节字符，按未结束的输入解码即可忽略
+        CoderResult result = decoder.decode(ByteBuffer.wrap(bytes, 0, len), out, !partial);
+        if (result.isError()) {
+            return BINARY_DATA;
+        }
+        if (result.isUnderflow() && !partial) {
+            decoder.flush(out);
+        }
+        out.flip();
+        return out.toString();
+    }
+
+    /**
+     * 归还缓冲区，之后不再保存内容。非复用的缓冲区可能仍在被其它线程读取(如异步输出日志)，只停止捕获，保留已保存的内容
+     */
+    void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (!pooled) {
+            return;
+        }
+        byte[] b = buf;
+        buf = null;
+        count = 0;
+        if (b != null && b.length <= MAX_REUSE_BUF_SIZE) {
+            byte[] cur = BUF_POOL.get();
+            if (cur == null || cur.length < b.length) {
+                BUF_POOL.set(b);
+            }
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        byte[] b = buf;
+        if (b == null) {
+            if (pooled) {
+                b = BUF_POOL.get();
+                // 取出后置空，避免同一线程上同时存在的多个捕获共用同一缓冲区
+                BUF_POOL.set(null);
+            }
+            if (b == null || b.length < required) {
+                b = new byte[Math.min(Math.max(required, INIT_BUF_SIZE), limit)];
+            }
+            buf = b;
+            return;
+        }
+        if (b.length < required) {
+            buf = Arrays.copyOf(b, (int) Math.min(limit, Math.max(required, (long) b.length << 1)));
+        }
+    }
+}
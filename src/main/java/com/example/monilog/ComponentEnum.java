@@ -30,7 +30,13 @@ enum ComponentEnum {
     redis;
 
     boolean isEnable() {
-        MoniLogProperties properties = SpringUtils.getBeanWithoutException(MoniLogProperties.class);
+        return MoniLogRuntimeConfig.get().isEnable(this);
+    }
+
+    /**
+     * 按配置计算组件是否开启，仅在编译运行时配置快照时调用
+     */
+    boolean isEnable(MoniLogProperties properties) {
         if (properties == null || !properties.isEnable()) {
             return false;
         }
@@ -81,30 +81,25 @@ class DefaultMoniLogPrinter implements MoniLogPrinter {
         if (o == null) {
             return null;
         }
-        Integer maxLen = moniLogProperties.getPrinter() == null ? null : moniLogProperties.getPrinter().getMaxTextLen();
-        String str = JSON.toJSONString(o);
-        if (null != maxLen && str.length() > maxLen) {
-            return str.substring(0, maxLen - 3) + "...";
+        MoniLogProperties.PrinterProperties printerCfg = moniLogProperties.getPrinter();
+        Integer maxLen = printerCfg == null ? null : printerCfg.getMaxTextLen();
+        if (null == maxLen) {
+            return JSON.toJSONString(o);
         }
-        return str;
+        //边序列化边截断，避免为了保留前maxLen个字符而完整序列化超大对象
+        return BoundedJsonWriter.toJSONString(o, maxLen, printerCfg.getMaxCollectionSize(), printerCfg.getMaxDepth());
     }
 
     private LogLevel getFalseResultLogLevel() {
-        MoniLogProperties.LogLevelConfig cfg = moniLogProperties.getPrinter().getLogLevel();
-        LogLevel ll = (cfg == null ? new MoniLogProperties.LogLevelConfig() : cfg).getFalseResult();
-        return ll == null ? LogLevel.ERROR : ll;
+        return MoniLogRuntimeConfig.get().getFalseResultLogLevel();
     }
 
     private LogLevel getLongRtLogLevel() {
-        MoniLogProperties.LogLevelConfig cfg = moniLogProperties.getPrinter().getLogLevel();
-        LogLevel ll = (cfg == null ? new MoniLogProperties.LogLevelConfig() : cfg).getLongRt();
-        return ll == null ? LogLevel.ERROR : ll;
+        return MoniLogRuntimeConfig.get().getLongRtLogLevel();
     }
 
     private LogLevel getLargeSizeLogLevel() {
-        MoniLogProperties.LogLevelConfig cfg = moniLogProperties.getPrinter().getLogLevel();
-        LogLevel ll = (cfg == null ? new MoniLogProperties.LogLevelConfig() : cfg).getLargeSize();
-        return ll == null ? LogLevel.ERROR : ll;
+        return MoniLogRuntimeConfig.get().getLargeSizeLogLevel();
     }
 
     private String getLogPattern(MoniLogParams p, LogType logType) {
@@ -22,6 +22,14 @@ import java.util.*;
  */
 @Slf4j
 public final class FeignMoniLogInterceptor {
+    /**
+     * 增强代码先调用本方法，关闭时直接执行原请求
+     * 注：该方法不可修改，包括可见级别
+     */
+    public static boolean isEnable() {
+        return ComponentEnum.feign.isEnable();
+    }
+
     /**
      * 为Client.execute()注册拦截器, 此处是通过Javassist将处理后的结果直接传入
      * 注：该方法不可修改，包括可见级别，否则将导致HttpClient拦截失效
@@ -95,24 +103,24 @@ public final class FeignMoniLogInterceptor {
                 mlp.setMsgCode(String.valueOf(bufferedResp.status()));
                 mlp.setMsgInfo(ErrorEnum.FAILED.getMsg());
             }
-            String resultStr = null;
             if (bufferedResp.isDownstream()) {
                 mlp.setOutput("Binary data");
             } else {
-                resultStr = bufferedResp.getBodyAsString();
-                mlp.setOutput(resultStr);
+                // 响应体延迟到日志输出时才解码
+                BufferingFeignResponse resp = bufferedResp;
+                mlp.setOutput(LazyLogArg.of(resp::formatBody));
             }
-            if (resultStr != null && bufferedResp.isJson()) {
-                Object json = JSON.parse(resultStr);
+            if (bufferedResp.isJson()) {
+                LogParser cl = ReflectUtil.getAnnotation(LogParser.class, mlp.getServiceCls(), m);
+                //尝试更精确的提取业务失败信息
+                String specifiedBoolExpr = StringUtils.trimToNull(feignProperties.getDefaultBoolExpr());
+                ResultParseStrategy rps = cl == null ? null : cl.resultParseStrategy();//默认使用IfSuccess策略
+                String boolExpr = cl == null ? specifiedBoolExpr : cl.boolExpr();
+                String codeExpr = cl == null ? null : cl.errorCodeExpr();
+                String msgExpr = cl == null ? null : cl.errorMsgExpr();
+                // 只提取解析表达式用到的字段，不再解析整个响应体
+                JSON json = bufferedResp.extractResult(rps, boolExpr, codeExpr, msgExpr);
                 if (json != null) {
-                    mlp.setOutput(json);
-                    LogParser cl = ReflectUtil.getAnnotation(LogParser.class, mlp.getServiceCls(), m);
-                    //尝试更精确的提取业务失败信息
-                    String specifiedBoolExpr = StringUtils.trimToNull(feignProperties.getDefaultBoolExpr());
-                    ResultParseStrategy rps = cl == null ? null : cl.resultParseStrategy();//默认使用IfSuccess策略
-                    String boolExpr = cl == null ? specifiedBoolExpr : cl.boolExpr();
-                    String codeExpr = cl == null ? null : cl.errorCodeExpr();
-                    String msgExpr = cl == null ? null : cl.errorMsgExpr();
                     ParsedResult parsedResult = ResultParseUtil.parseResult(json, rps, null, boolExpr, codeExpr, msgExpr);
                     mlp.setSuccess(parsedResult.isSuccess());
                     mlp.setMsgCode(parsedResult.getMsgCode());
@@ -261,14 +269,35 @@ public final class FeignMoniLogInterceptor {
         }
 
         String getBodyAsString() {
-            Charset charset = response.request() == null ? null : response.request().charset();
-            if (charset == null) {
-                charset = StandardCharsets.UTF_8;
+            return StringUtil.encodeByteArray(buffer, charset(), "Binary data");
+        }
+
+        /**
+         * 用于日志输出的响应体，json响应输出解析后的对象
+         */
+        Object formatBody() {
+            String bodyString = getBodyAsString();
+            if (bodyString == null || !isJson()) {
+                return bodyString;
             }
-            String bodyString = StringUtil.encodeByteArray(buffer, charset, "Binary data");
-            //复原response
-            this.response = response.toBuilder().body(buffer).build();
-            return bodyString;
+            try {
+                Object json = JSON.parse(bodyString);
+                return json == null ? bodyString : json;
+            } catch (Exception e) {
+                return bodyString;
+            }
+        }
+
+        JSON extractResult(ResultParseStrategy rps, String boolExpr, String codeExpr, String msgExpr) {
+            if (buffer == null) {
+                return null;
+            }
+            return ResultParseUtil.extractResult(buffer, buffer.length, true, charset(), rps, boolExpr, codeExpr, msgExpr);
+        }
+
+        private Charset charset() {
+            Charset charset = response.request() == null ? null : response.request().charset();
+            return charset == null ? StandardCharsets.UTF_8 : charset;
         }
 
         boolean isDownstream() {
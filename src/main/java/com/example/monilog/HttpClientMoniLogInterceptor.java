@@ -12,6 +12,7 @@ import org.apache.http.client.entity.DecompressingEntity;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.entity.StringEntity;
@@ -27,6 +28,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -64,6 +66,10 @@ public final class HttpClientMoniLogInterceptor {
     private static class RequestInterceptor implements HttpRequestInterceptor {
         @Override
         public void process(HttpRequest request, HttpContext httpContext) throws HttpException, IOException {
+            // 两个开关都关闭时不再解析请求与遍历线程栈
+            if (!ComponentEnum.httpclient.isEnable() && !ComponentEnum.feign.isEnable()) {
+                return;
+            }
             RequestLine requestLine = request.getRequestLine();
             HttpHost host = (HttpHost) httpContext.getAttribute(HttpClientContext.HTTP_TARGET_HOST);
 //            String targetHost = host == null ? null : host.getHostName() + (host.getPort() < 0 || host.getPort() == 80 ? "" : ":" + host.getPort());
@@ -123,7 +129,7 @@ public final class HttpClientMoniLogInterceptor {
                 p.setMsgInfo(ErrorEnum.SUCCESS.getMsg());
                 p.setLogPoint(logPoint);
 
-                p.setTags(TagBuilder.of("url", HttpUtil.extractPathWithoutPathParams(path), "method", method).toArray());
+                p.setTags(TagBuilder.of("url", HttpUtil.extractPathWithoutPathParams(host == null ? null : host.toHostString(), path), "method", method).toArray());
                 httpContext.setAttribute(MONILOG_PARAMS_KEY, p);
             } catch (Exception e) {
                 MoniLogUtil.innerDebug("HttpClient.RequestInterceptor.process error", e);
@@ -152,7 +158,7 @@ public final class HttpClientMoniLogInterceptor {
 
                 HttpEntity entity = httpResponse.getEntity();
                 String responseBody = null;
-                JSON jsonBody = null;
+                HttpEntity bufferedBody = null;
 
                 if (isValidEntity(entity)) {
                     if (isStreaming(entity, httpResponse.getAllHeaders())) {
@@ -165,35 +171,38 @@ public final class HttpClientMoniLogInterceptor {
                                 if (isStreaming(innerEntity, httpResponse.getAllHeaders())) {
                                     responseBody = "Binary Data";
                                 } else {
-                                    BufferedHttpEntity bufferedEntity = new MonilogBufferedHttpEntity(innerEntity);
-                                    responseBody = EntityUtils.toString(bufferedEntity);
-                                    jsonBody = StringUtil.tryConvert2Json(responseBody);
-                                    ReflectUtil.setPropValue(entity, entityField, bufferedEntity, false);
+                                    bufferedBody = new MonilogBufferedHttpEntity(innerEntity);
+                                    ReflectUtil.setPropValue(entity, entityField, bufferedBody, false);
                                 }
                             } else {
                                 responseBody = "[parseResponseDataFailed]";
                             }
                         } else {
-                            HttpEntity bufferedEntity = null;
                             if (entity instanceof DecompressingEntity) {
-                                bufferedEntity = new DecompressingEntityWrapper(entity);
+                                bufferedBody = new DecompressingEntityWrapper(entity);
                             } else {
-                                bufferedEntity = getEntity(entity);
+                                bufferedBody = getEntity(entity);
                             }
-                            responseBody = EntityUtils.toString(bufferedEntity);
-                            jsonBody = StringUtil.tryConvert2Json(responseBody);
-                            httpResponse.setEntity(bufferedEntity);
+                            httpResponse.setEntity(bufferedBody);
                         }
                     }
                 }
 
-                p.setOutput(jsonBody == null ? responseBody : jsonBody);
+                if (bufferedBody == null) {
+                    p.setOutput(responseBody);
+                    return;
+                }
+                // 响应体延迟到日志输出时才解码，结果解析只提取解析表达式用到的字段
+                HttpEntity body = bufferedBody;
+                p.setOutput(LazyLogArg.of(() -> formatBody(body)));
+                MoniLogProperties prop = SpringUtils.getBeanWithoutException(MoniLogProperties.class);
+                String defaultBoolExpr = null;
+                if (prop != null) {
+                    defaultBoolExpr = prop.getHttpclient().getDefaultBoolExpr();
+                }
+                byte[] bytes = body instanceof DecompressingEntityWrapper ? ((DecompressingEntityWrapper) body).getBuffer() : EntityUtils.toByteArray(body);
+                JSON jsonBody = ResultParseUtil.extractResult(bytes, bytes == null ? 0 : bytes.length, true, getCharset(body), null, defaultBoolExpr, null, null);
                 if (jsonBody != null) {
-                    MoniLogProperties prop = SpringUtils.getBeanWithoutException(MoniLogProperties.class);
-                    String defaultBoolExpr = null;
-                    if (prop != null) {
-                        defaultBoolExpr = prop.getHttpclient().getDefaultBoolExpr();
-                    }
                     ParsedResult pr = ResultParseUtil.parseResult(jsonBody, null, null, defaultBoolExpr, null, null);
                     if (p.isSuccess()) {
                         //如果外层响应码是200，则再看内层是否成功
@@ -215,6 +224,30 @@ public final class HttpClientMoniLogInterceptor {
         }
     }
 
+    /**
+     * 用于日志输出的响应体，json响应输出解析后的对象
+     */
+    private static Object formatBody(HttpEntity entity) {
+        try {
+            String responseBody = EntityUtils.toString(entity);
+            JSON jsonBody = StringUtil.tryConvert2Json(responseBody);
+            return jsonBody == null ? responseBody : jsonBody;
+        } catch (Exception e) {
+            MoniLogUtil.innerDebug("HttpClient format response body error", e);
+            return null;
+        }
+    }
+
+    private static Charset getCharset(HttpEntity entity) {
+        try {
+            ContentType contentType = ContentType.get(entity);
+            Charset charset = contentType == null ? null : contentType.getCharset();
+            return charset == null ? StandardCharsets.UTF_8 : charset;
+        } catch (Exception e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
     private static BufferedHttpEntity getEntity(HttpEntity entity) throws IOException, InvocationTargetException, IllegalAccessException {
         BufferedHttpEntity bufferedEntity = new BufferedHttpEntity(entity);
         // bos 中的都是RestartableInputStream的子类
@@ -2,7 +2,11 @@ package com.example.monilog;
 
 import cn.hutool.core.util.RandomUtil;
 import cn.hutool.core.util.URLUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.http.HttpHeaders;
@@ -11,8 +15,20 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
+import static com.example.monilog.MonilogMetrics.METRIC_PREFIX;
+
 class HttpUtil {
     private static final String PATH_SEP = "/";
+    /**
+     * 路径模板缓存的最大条目数：key为去掉query与fragment的url，value为替换路径参数后的模板
+     */
+    private static final int MAX_CACHED_PATHS = 10000;
+    /**
+     * 路径片段缓存的最大条目数：key为单个路径片段，value为替换后的片段
+     */
+    private static final int MAX_CACHED_SEGMENTS = 20000;
+    private static final Cache<String, String> PATH_CACHE = monitor(CacheBuilder.newBuilder().maximumSize(MAX_CACHED_PATHS).recordStats().build(), "path");
+    private static final Cache<String, String> SEGMENT_CACHE = monitor(CacheBuilder.newBuilder().maximumSize(MAX_CACHED_SEGMENTS).recordStats().build(), "segment");
     private static final Set<String> TEXT_TYPES = Sets.newHashSet("application/json", "application/xml", "application/xhtml+xml", "text/");
 
     private static final Set<String> STREAMING_TYPES = Sets.newHashSet("application/octet-stream", "application/pdf", "application/zip", "application/x-", "application/vnd.", "application/ms", "image/", "audio/", "video/");
@@ -87,12 +103,34 @@ class HttpUtil {
     }
 
     /**
-     * 从url或uri中提取path路径，对于不可枚举的路径参数，将替换成常量占位符
+     * 从url或uri中提取path路径，对于不可枚举的路径参数，将替换成常量占位符。
+     * 开启路由模板学习时由{@link RouteTemplateRegistry}映射；否则使用随机串识别，结果按url(不含query与fragment)缓存
      */
     static String extractPathWithoutPathParams(String url) {
+        return extractPathWithoutPathParams(null, url);
+    }
+
+    /**
+     * @param host url为相对路径时请求的目标host(如host:port)，路由模板按host分别学习
+     */
+    static String extractPathWithoutPathParams(String host, String url) {
         if (StringUtils.isBlank(url)) {
             return url;
         }
+        MoniLogProperties.RouteTemplateProperties routeCfg = MoniLogUtil.getRouteTemplateConfig();
+        if (routeCfg != null && routeCfg.isEnable()) {
+            return RouteTemplateRegistry.resolve(host, url, routeCfg);
+        }
+        String key = stripQuery(url);
+        String template = PATH_CACHE.getIfPresent(key);
+        if (template == null) {
+            template = doExtractPathWithoutPathParams(key);
+            PATH_CACHE.put(key, template);
+        }
+        return template;
+    }
+
+    private static String doExtractPathWithoutPathParams(String url) {
         String path = extractPath(url);
         if (StringUtils.isBlank(path)) {
             return PATH_SEP;
@@ -106,19 +144,52 @@ class HttpUtil {
             if (StringUtils.isBlank(segment)) {
                 continue;
             }
-            if (StringUtil.hasRandomNum(segment)) {
-                segments[i] = "{n}";
-                continue;
-            }
-            String[] arr = StringUtil.parseFileName(segment);
-            if (StringUtil.isRandomStr(arr[0])) {
-                arr[0] = "{xxx}";
+            String normalized = SEGMENT_CACHE.getIfPresent(segment);
+            if (normalized == null) {
+                normalized = normalizeSegment(segment);
+                SEGMENT_CACHE.put(segment, normalized);
             }
-            segments[i] = arr[0] + arr[1];
+            segments[i] = normalized;
         }
         return StringUtils.join(segments, PATH_SEP);
     }
 
+    /**
+     * 单个路径片段的判定与替换：随机数字替换为{n}，随机字符串替换为{xxx}，文件扩展名保留
+     */
+    private static String normalizeSegment(String segment) {
+        if (StringUtil.hasRandomNum(segment)) {
+            return "{n}";
+        }
+        String[] arr = StringUtil.parseFileName(segment);
+        if (StringUtil.isRandomStr(arr[0])) {
+            arr[0] = "{xxx}";
+        }
+        return arr[0] + arr[1];
+    }
+
+    /**
+     * 去掉url中的query与fragment，二者不参与路径模板的计算
+     */
+    private static String stripQuery(String url) {
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                return url.substring(0, i);
+            }
+        }
+        return url;
+    }
+
+    private static <K, V> Cache<K, V> monitor(Cache<K, V> cache, String name) {
+        try {
+            GuavaCacheMetrics.monitor(Metrics.globalRegistry, cache, METRIC_PREFIX + "http_url_cache", "type", name);
+        } catch (Throwable e) {
+            MoniLogUtil.innerDebug("http url cache metrics register failed", e);
+        }
+        return cache;
+    }
+
     public static void main(String[] args) {
         checkRandom("/jiduUpmApi/upm/validateSignInUser",false);
         String str = extractPathWithoutPathParams("/jiduUpmApi/upm/validateSignInUser");
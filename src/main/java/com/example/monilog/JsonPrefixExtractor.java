@@ -0,0 +1,430 @@
+package com.example.monilog;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按字段集合从JSON对象的字节内容(或其前缀)中提取字段：逐个token扫描一遍，不在字段集合中的值只跳过不解析，
+ * 所需字段全部找到后立即停止扫描。结果是只包含所需字段的JSONObject，对这些字段求值与对完整DOM求值结果一致；
+ * 内容被截断且截断前未找齐所需字段时无法判断缺少的字段是否存在，不返回结果
+ *
+ * @author yp
+ * @date 2024/04/03
+ */
+final class JsonPrefixExtractor {
+    private final byte[] buf;
+    private final int len;
+    private final Charset charset;
+    private int pos;
+
+    private JsonPrefixExtractor(byte[] buf, int len, Charset charset) {
+        this.buf = buf;
+        this.len = len;
+        this.charset = charset;
+    }
+
+    /**
+     * @return 只包含所需字段的结果，内容不是JSON对象或截断前未找齐所需字段时返回null
+     */
+    static JSONObject extract(byte[] buf, int len, Charset charset, FieldSet fields) {
+        if (buf == null || len <= 0) {
+            return null;
+        }
+        if (!isAsciiCompatible(charset)) {
+            // 先转为UTF-8再扫描
+            byte[] utf8 = CaptureBuffer.decode(buf, len, true, charset, len).getBytes(StandardCharsets.UTF_8);
+            return new JsonPrefixExtractor(utf8, utf8.length, StandardCharsets.UTF_8).extractRoot(fields);
+        }
+        return new JsonPrefixExtractor(buf, len, charset).extractRoot(fields);
+    }
+
+    /**
+     * 判断内容是否以JSON对象开头
+     */
+    static boolean isObject(byte[] buf, int len) {
+        for (int i = 0; buf != null && i < len; i++) {
+            byte b = buf[i];
+            if (!isWhitespace(b)) {
+                return b == '{';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断内容是否为空对象"{}"
+     */
+    static boolean isEmptyObject(byte[] buf, int len) {
+        int i = 0;
+        while (i < len && isWhitespace(buf[i])) {
+            i++;
+        }
+        if (i >= len || buf[i++] != '{') {
+            return false;
+        }
+        while (i < len && isWhitespace(buf[i])) {
+            i++;
+        }
+        return i < len && buf[i] == '}';
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        // GBK等编码的多字节字符中可能出现'\\'、'"'等结构字符，不能直接按字节扫描
+        return StandardCharsets.UTF_8.equals(charset) || StandardCharsets.ISO_8859_1.equals(charset)
+                || StandardCharsets.US_ASCII.equals(charset);
+    }
+
+    private JSONObject extractRoot(FieldSet fields) {
+        skipWhitespace();
+        if (pos >= len || buf[pos] != '{') {
+            return null;
+        }
+        pos++;
+        JSONObject result = new JSONObject();
+        try {
+            extractObject(fields, result, true);
+        } catch (EndOfInput e) {
+            // 内容已截断，未读到的字段可能在截断位置之后，按缺少字段求值会得到错误的结果
+            return null;
+        } catch (Exception e) {
+            MoniLogUtil.innerDebug("extract json fields error", e);
+        }
+        return result;
+    }
+
+    /**
+     * 提取对象中的字段，起始括号已被消费
+     *
+     * @param last 该对象是否为最后一个待提取的字段(其所有上层对象在它之后都已找齐)，此时找齐后整个提取结束，无需再回到上层继续扫描
+     * @return 是否已找齐全部字段；找齐时对象的剩余部分未被扫描
+     */
+    private boolean extractObject(FieldSet fields, JSONObject target, boolean last) {
+        int remaining = fields.children.size();
+        if (remaining == 0) {
+            return true;
+        }
+        while (true) {
+            skipWhitespace();
+            int b = next();
+            if (b == ',') {
+                skipWhitespace();
+                b = next();
+            }
+            if (b != '"') {
+                // 对象结束或格式错误
+                return false;
+            }
+            String key = readString();
+            skipWhitespace();
+            if (next() != ':') {
+                return false;
+            }
+            skipWhitespace();
+            FieldSet child = fields.children.get(key);
+            if (child == null) {
+                skipValue();
+                continue;
+            }
+            if (child.isLeaf() || peek() != '{') {
+                target.put(key, readValue());
+            } else {
+                pos++;
+                JSONObject sub = new JSONObject();
+                target.put(key, sub);
+                // 整个提取的最后一个字段无需再跳过对象的剩余部分；否则必须跳过，上层才能从正确的层级继续扫描
+                boolean lastField = last && remaining == 1;
+                if (extractObject(child, sub, lastField) && !lastField) {
+                    skipRestOfObject();
+                }
+            }
+            if (--remaining == 0) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 读取任意值，嵌套的对象/数组交由fastjson完整解析
+     */
+    private Object readValue() {
+        int c = peek();
+        if (c == '{' || c == '[') {
+            int start = pos;
+            skipValue();
+            return JSON.parse(new String(buf, start, pos - start, charset));
+        }
+        if (c == '"') {
+            pos++;
+            return readString();
+        }
+        return readLiteral();
+    }
+
+    private void skipValue() {
+        int c = peek();
+        if (c == '{' || c == '[') {
+            skipNested();
+        } else if (c == '"') {
+            pos++;
+            skipString();
+        } else {
+            skipLiteral();
+        }
+    }
+
+    /**
+     * 读取字符串值，起始引号已被消费
+     */
+    private String readString() {
+        int start = pos;
+        boolean escaped = false;
+        while (true) {
+            int b = next();
+            if (b == '\\') {
+                escaped = true;
+                next();
+            } else if (b == '"') {
+                break;
+            }
+        }
+        String raw = new String(buf, start, pos - 1 - start, charset);
+        return escaped ? unescape(raw) : raw;
+    }
+
+    private static String unescape(String raw) {
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\' || i + 1 >= raw.length()) {
+                sb.append(c);
+                continue;
+            }
+            char e = raw.charAt(++i);
+            switch (e) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 < raw.length()) {
+                        try {
+                            sb.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                            i += 4;
+                            break;
+                        } catch (NumberFormatException ignore) {
+                            // 非法的转义按原样保留
+                        }
+                    }
+                    sb.append(e);
+                    break;
+                default:
+                    sb.append(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 读取数字、布尔或null，与fastjson的取值类型保持一致：整数依次为Integer/Long/BigInteger，小数为BigDecimal
+     */
+    private Object readLiteral() {
+        int start = pos;
+        skipLiteral();
+        String token = new String(buf, start, pos - start, StandardCharsets.ISO_8859_1);
+        switch (token) {
+            case "true":
+                return Boolean.TRUE;
+            case "false":
+                return Boolean.FALSE;
+            case "null":
+                return null;
+            default:
+                break;
+        }
+        try {
+            if (token.indexOf('.') >= 0 || token.indexOf('e') >= 0 || token.indexOf('E') >= 0) {
+                return new BigDecimal(token);
+            }
+            BigInteger value = new BigInteger(token);
+            if (value.bitLength() < 32) {
+                return value.intValue();
+            }
+            return value.bitLength() < 64 ? (Object) value.longValue() : value;
+        } catch (NumberFormatException e) {
+            return token;
+        }
+    }
+
+    private void skipLiteral() {
+        while (true) {
+            int b = peek();
+            if (b == ',' || b == '}' || b == ']' || isWhitespace((byte) b)) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * 跳过嵌套的对象或数组，起始括号尚未消费
+     */
+    private void skipNested() {
+        int depth = 0;
+        do {
+            int b = next();
+            if (b == '"') {
+                skipString();
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * 跳过对象的剩余部分，直到与起始括号匹配的结束括号
+     */
+    private void skipRestOfObject() {
+        int depth = 1;
+        do {
+            int b = next();
+            if (b == '"') {
+                skipString();
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private void skipString() {
+        while (true) {
+            int b = next();
+            if (b == '\\') {
+                next();
+            } else if (b == '"') {
+                return;
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < len && isWhitespace(buf[pos])) {
+            pos++;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private int peek() {
+        if (pos >= len) {
+            throw EndOfInput.INSTANCE;
+        }
+        return buf[pos];
+    }
+
+    private int next() {
+        if (pos >= len) {
+            throw EndOfInput.INSTANCE;
+        }
+        return buf[pos++];
+    }
+
+    public static void main(String[] args) {
+        // 嵌套字段找齐后须回到正确的层级，不能把中间层对象的字段当作顶层字段
+        checkExtract("{\"data\":{\"result\":{\"code\":1},\"code\":5},\"code\":7}", "{\"data\":{\"result\":{\"code\":1}},\"code\":7}",
+                new String[]{"data", "result", "code"}, new String[]{"code"});
+        checkExtract("{\"code\":7,\"data\":{\"result\":{\"code\":1,\"x\":2},\"code\":5}}", "{\"data\":{\"result\":{\"code\":1}},\"code\":7}",
+                new String[]{"data", "result", "code"}, new String[]{"code"});
+        checkExtract("{\"a\":{\"b\":{\"c\":1,\"d\":2},\"e\":3},\"f\":4}", "{\"a\":{\"b\":{\"c\":1},\"e\":3},\"f\":4}",
+                new String[]{"a", "b", "c"}, new String[]{"a", "e"}, new String[]{"f"});
+        // 最后一个字段在嵌套对象中，其后的内容被截断时结果仍有效
+        checkExtract("{\"code\":0,\"data\":{\"status\":1,\"list\":[1,2", "{\"code\":0,\"data\":{\"status\":1}}",
+                new String[]{"code"}, new String[]{"data", "status"});
+        // 截断前未找齐字段时不返回结果
+        checkExtract("{\"data\":{\"list\":[1,2", null, new String[]{"code"});
+        System.out.println("over");
+    }
+
+    private static void checkExtract(String json, String expect, String[]... paths) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        JSONObject result = extract(bytes, bytes.length, StandardCharsets.UTF_8, FieldSet.of(Arrays.asList(paths)));
+        boolean ok = expect == null ? result == null : result != null && JSON.parseObject(expect).equals(result);
+        if (ok) {
+            System.out.printf("ok, json: %s, result: %s\n", json, result);
+        } else {
+            System.err.printf("failed, json: %s, expect: %s, result: %s\n", json, expect, result);
+        }
+    }
+
+    /**
+     * 需要提取的字段，按路径组织为树：叶子节点取完整的值，中间节点只提取其下的字段
+     */
+    static final class FieldSet {
+        private final Map<String, FieldSet> children = new HashMap<>(8);
+
+        /**
+         * @param paths 字段路径，如["code"]、["data", "status"]
+         */
+        static FieldSet of(List<String[]> paths) {
+            FieldSet root = new FieldSet();
+            for (String[] path : paths) {
+                FieldSet node = root;
+                for (int i = 0; i < path.length; i++) {
+                    FieldSet child = node.children.get(path[i]);
+                    if (child == null) {
+                        child = new FieldSet();
+                        node.children.put(path[i], child);
+                    } else if (child.isLeaf()) {
+                        // 已需要完整的值
+                        break;
+                    }
+                    if (i == path.length - 1) {
+                        child.children.clear();
+                    }
+                    node = child;
+                }
+            }
+            return root;
+        }
+
+        boolean isLeaf() {
+            return children.isEmpty();
+        }
+    }
+
+    /**
+     * 读到内容末尾，用于跳出解析
+     */
+    private static final class EndOfInput extends RuntimeException {
+        private static final EndOfInput INSTANCE = new EndOfInput();
+
+        private EndOfInput() {
+            super(null, null, false, false);
+        }
+    }
+}
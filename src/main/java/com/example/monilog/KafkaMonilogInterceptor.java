@@ -1,8 +1,10 @@
 package com.example.monilog;
 
 import com.alibaba.fastjson.JSONObject;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
@@ -10,6 +12,13 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.springframework.messaging.Message;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.monilog.MonilogMetrics.METRIC_PREFIX;
+
 /**
  * kafka monilog处理器
  *
@@ -19,6 +28,13 @@ import org.springframework.messaging.Message;
 @Slf4j
 public final class KafkaMonilogInterceptor {
     public static class ConsumerInterceptor {
+        /**
+         * 增强代码先调用本方法，关闭时直接调用原方法。请勿修改本方法的方法名及可见性
+         */
+        public static boolean isEnable() {
+            return ComponentEnum.kafka_consumer.isEnable();
+        }
+
         /**
          * 请勿修改本方法的方法名及可见性
          */
@@ -39,18 +55,23 @@ public final class KafkaMonilogInterceptor {
                     clsName = st.getClassName();
                     action = st.getMethodName();
                 }
-                ConsumerRecord<?, ?> cr = findConsumerRecord(providedArgs);
+                List<ConsumerRecord<?, ?>> records = findConsumerRecords(providedArgs);
                 p.setLogPoint(LogPoint.kafka_consumer);
                 p.setAction(action);
-                p.setServiceCls(Class.forName(clsName));
+                p.setServiceCls(ReflectUtil.forName(clsName));
                 p.setService(ReflectUtil.getSimpleClassName(p.getServiceCls()));
                 p.setCost(System.currentTimeMillis());
                 p.setSuccess(true);
                 p.setMsgCode(ErrorEnum.SUCCESS.name());
                 p.setMsgInfo(ErrorEnum.SUCCESS.getMsg());
-                p.setInput(new Object[]{formatInput(cr)});
-                if (cr != null) {
-                    p.setTags(TagBuilder.of("topic", cr.topic()).toArray());
+                if (records.isEmpty()) {
+                    p.setInput(new Object[]{null});
+                } else {
+                    // 消息内容延迟到日志真正输出时才格式化
+                    boolean batch = isBatch(providedArgs);
+                    p.setInput(new Object[]{batch ? LazyLogArg.of(() -> formatInputs(records)) : LazyLogArg.of(() -> formatInput(records.get(0)))});
+                    p.setTags(TagBuilder.of("topic", records.get(0).topic()).toArray());
+                    recordConsumeMetrics(records, batch, p.getCost());
                 }
                 return p;
             } catch (Throwable t) {
@@ -82,20 +103,101 @@ public final class KafkaMonilogInterceptor {
             }
         }
 
-        private static ConsumerRecord<?, ?> findConsumerRecord(Object... providedArgs) {
+        /**
+         * 从监听方法的参数中找到本次消费的消息：单条监听为ConsumerRecord，批量监听为List&lt;ConsumerRecord&gt;或ConsumerRecords
+         */
+        private static List<ConsumerRecord<?, ?>> findConsumerRecords(Object... providedArgs) {
             if (providedArgs == null) {
-                return null;
+                return Collections.emptyList();
             }
             for (Object o : providedArgs) {
                 if (o instanceof ConsumerRecord) {
-                    return (ConsumerRecord<?, ?>) o;
+                    return Collections.singletonList((ConsumerRecord<?, ?>) o);
+                }
+                if (o instanceof ConsumerRecords) {
+                    List<ConsumerRecord<?, ?>> list = new ArrayList<>(((ConsumerRecords<?, ?>) o).count());
+                    for (ConsumerRecord<?, ?> cr : (ConsumerRecords<?, ?>) o) {
+                        list.add(cr);
+                    }
+                    return list;
+                }
+                if (o instanceof List && !((List<?>) o).isEmpty() && ((List<?>) o).get(0) instanceof ConsumerRecord) {
+                    @SuppressWarnings("unchecked")
+                    List<ConsumerRecord<?, ?>> list = (List<ConsumerRecord<?, ?>>) o;
+                    return list;
                 }
             }
-            return null;
+            return Collections.emptyList();
+        }
+
+        /**
+         * 与findConsumerRecords的查找顺序一致，判断找到的是否为批量消息
+         */
+        private static boolean isBatch(Object... providedArgs) {
+            if (providedArgs == null) {
+                return false;
+            }
+            for (Object o : providedArgs) {
+                if (o instanceof ConsumerRecord) {
+                    return false;
+                }
+                if (o instanceof ConsumerRecords || (o instanceof List && !((List<?>) o).isEmpty() && ((List<?>) o).get(0) instanceof ConsumerRecord)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 消费指标：批量监听每次拉取的消息数、消息从产生到被消费的端到端延迟，以及按分区的消费计数。
+         * 同一批消息通常按分区连续排列，这里按连续的(topic, partition)分段累加，避免逐条查找指标
+         */
+        private static void recordConsumeMetrics(List<ConsumerRecord<?, ?>> records, boolean batch, long now) {
+            try {
+                String application = SpringUtils.application;
+                if (batch) {
+                    MonilogMetrics.summary(METRIC_PREFIX + "kafka_consumer_batch_size" + MonitorType.SUMMARY.getMark(), records.size(), "application", application, "topic", records.get(0).topic());
+                }
+                String latencyName = METRIC_PREFIX + "kafka_consumer_e2e_latency" + MonitorType.TIMER.getMark();
+                String countName = METRIC_PREFIX + "kafka_consumer_message" + MonitorType.RECORD.getMark();
+                String topic = null;
+                int partition = -1;
+                int count = 0;
+                Timer latency = null;
+                for (ConsumerRecord<?, ?> cr : records) {
+                    if (!cr.topic().equals(topic) || cr.partition() != partition) {
+                        if (count > 0) {
+                            MonilogMetrics.count(countName, count, "application", application, "topic", topic, "partition", String.valueOf(partition));
+                        }
+                        if (!cr.topic().equals(topic)) {
+                            latency = MonilogMetrics.eventDuration(latencyName, "application", application, "topic", cr.topic());
+                        }
+                        topic = cr.topic();
+                        partition = cr.partition();
+                        count = 0;
+                    }
+                    count++;
+                    if (latency != null && cr.timestamp() > 0) {
+                        latency.record(Math.max(0, now - cr.timestamp()), TimeUnit.MILLISECONDS);
+                    }
+                }
+                if (count > 0) {
+                    MonilogMetrics.count(countName, count, "application", application, "topic", topic, "partition", String.valueOf(partition));
+                }
+            } catch (Exception e) {
+                MoniLogUtil.innerDebug("kafka recordConsumeMetrics error", e);
+            }
         }
     }
 
     public static class ProducerInterceptor {
+        /**
+         * 增强代码先调用本方法，关闭时直接发送，不再包装回调。请勿修改本方法的方法名及可见性
+         */
+        public static boolean isEnable() {
+            return ComponentEnum.kafka_producer.isEnable();
+        }
+
         /**
          * 请勿修改本方法的方法名及可见性
          */
@@ -105,21 +207,12 @@ public final class KafkaMonilogInterceptor {
             }
             try {
                 //该方法可能会被调用多次(框架重试)
-                StackTraceElement st = ThreadUtil.getNextClassFromStack(ProducerInterceptor.class);
-                String clsName;
-                String action;
-                if (st == null) {
-                    clsName = KafkaProducer.class.getCanonicalName();
-                    action = "send";
-                } else {
-                    clsName = st.getClassName();
-                    action = st.getMethodName();
-                }
+                CallSite callSite = resolveCallSite();
                 MoniLogParams p = new MoniLogParams();
                 p.setLogPoint(LogPoint.kafka_producer);
-                p.setAction(action);
-                p.setServiceCls(Class.forName(clsName));
-                p.setService(ReflectUtil.getSimpleClassName(p.getServiceCls()));
+                p.setAction(callSite.action);
+                p.setServiceCls(callSite.serviceCls);
+                p.setService(callSite.service);
                 p.setCost(System.currentTimeMillis());
                 p.setSuccess(true);
                 p.setMsgCode(ErrorEnum.SUCCESS.name());
@@ -133,6 +226,39 @@ public final class KafkaMonilogInterceptor {
             return null;
         }
 
+        /**
+         * 每次发送都从线程栈解析调用方：多个业务方法可能共用同一producer向同一topic发送，按producer/topic缓存会把消息记到错误的调用方上。
+         * java9+下只遍历到调用方所在的栈帧，调用方类的加载结果由ReflectUtil缓存
+         */
+        private static CallSite resolveCallSite() throws ClassNotFoundException {
+            StackTraceElement st = ThreadUtil.getNextClassFromStack(ProducerInterceptor.class);
+            String clsName;
+            String action;
+            if (st == null) {
+                clsName = KafkaProducer.class.getCanonicalName();
+                action = "send";
+            } else {
+                clsName = st.getClassName();
+                action = st.getMethodName();
+            }
+            return new CallSite(ReflectUtil.forName(clsName), action);
+        }
+
+        /**
+         * 发送消息的业务调用方
+         */
+        private static final class CallSite {
+            private final Class<?> serviceCls;
+            private final String service;
+            private final String action;
+
+            CallSite(Class<?> serviceCls, String action) {
+                this.serviceCls = serviceCls;
+                this.service = ReflectUtil.getSimpleClassName(serviceCls);
+                this.action = action;
+            }
+        }
+
         public static class KfkSendCallback implements Callback {
             private final Callback delegate;
             private final long timestamp;
@@ -188,6 +314,14 @@ public final class KafkaMonilogInterceptor {
         return obj;
     }
 
+    private static Object formatInputs(List<ConsumerRecord<?, ?>> records) {
+        List<Object> list = new ArrayList<>(records.size());
+        for (ConsumerRecord<?, ?> record : records) {
+            list.add(formatInput(record));
+        }
+        return list;
+    }
+
     private static <K, V> Object formatInput(ConsumerRecord<K, V> record) {
         if (record == null) {
             return null;
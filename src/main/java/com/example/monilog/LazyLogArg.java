@@ -0,0 +1,52 @@
+package com.example.monilog;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONAware;
+
+import java.util.function.Supplier;
+
+/**
+ * 延迟计算的日志参数：仅在日志真正输出(序列化)时才计算参数值，且只计算一次。
+ * 用于消息体解码等开销较大、但多数情况下不会被打印的参数
+ *
+ * @author yp
+ * @date 2024/04/01
+ */
+final class LazyLogArg implements JSONAware {
+    private static final Object NONE = new Object();
+    private final Supplier<?> supplier;
+    private volatile Object value = NONE;
+
+    private LazyLogArg(Supplier<?> supplier) {
+        this.supplier = supplier;
+    }
+
+    static LazyLogArg of(Supplier<?> supplier) {
+        return new LazyLogArg(supplier);
+    }
+
+    Object get() {
+        Object v = value;
+        if (v == NONE) {
+            try {
+                v = supplier.get();
+            } catch (Throwable e) {
+                MoniLogUtil.innerDebug("lazy log arg evaluate error", e);
+                v = null;
+            }
+            value = v;
+        }
+        return v;
+    }
+
+    @Override
+    public String toJSONString() {
+        return JSON.toJSONString(get());
+    }
+
+    @Override
+    public String toString() {
+        Object v = get();
+        return v instanceof String ? (String) v : toJSONString();
+    }
+}
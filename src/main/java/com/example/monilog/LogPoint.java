@@ -39,37 +39,40 @@ public enum LogPoint {
         this(false);
     }
 
-    boolean exceedLongRtThreshold(MoniLogProperties properties, long cost) {
-        if (properties == null || !properties.isMonitorLongRt() || cost <= 0) {
-            return false;
+    /**
+     * 慢调用阈值，未开启慢调用监控时返回-1
+     */
+    long getLongRtThreshold(MoniLogProperties properties) {
+        if (properties == null || !properties.isMonitorLongRt()) {
+            return -1;
         }
         switch (this) {
             case xxljob:
-                return exceedLongRtThreshold(properties.getXxljob().getLongRt(), cost);
+                return properties.getXxljob().getLongRt();
             case redis:
-                return exceedLongRtThreshold(properties.getRedis().getLongRt(), cost);
+                return properties.getRedis().getLongRt();
             case mybatis:
-                return exceedLongRtThreshold(properties.getMybatis().getLongRt(), cost);
+                return properties.getMybatis().getLongRt();
             case grpc_client:
             case grpc_server:
-                return exceedLongRtThreshold(properties.getGrpc().getLongRt(), cost);
+                return properties.getGrpc().getLongRt();
             case http_client:
-                return exceedLongRtThreshold(properties.getHttpclient().getLongRt(), cost);
+                return properties.getHttpclient().getLongRt();
             case http_server:
-                return exceedLongRtThreshold(properties.getWeb().getLongRt(), cost);
+                return properties.getWeb().getLongRt();
             case feign_client:
             case feign_server:
-                return exceedLongRtThreshold(properties.getFeign().getLongRt(), cost);
+                return properties.getFeign().getLongRt();
             case rocketmq_consumer:
             case rocketmq_producer:
-                return exceedLongRtThreshold(properties.getRocketmq().getLongRt(), cost);
+                return properties.getRocketmq().getLongRt();
             case kafka_consumer:
             case kafka_producer:
-                return exceedLongRtThreshold(properties.getKafka().getLongRt(), cost);
+                return properties.getKafka().getLongRt();
             case unknown:
             case user_define:
             default:
-                return false;
+                return -1;
         }
     }
 
@@ -128,11 +131,4 @@ public enum LogPoint {
         }
         return detailLogLevel;
     }
-
-    private static boolean exceedLongRtThreshold(long threshold, long actualCost) {
-        if (threshold <= 0) {
-            return false;
-        }
-        return threshold < actualCost;
-    }
 }
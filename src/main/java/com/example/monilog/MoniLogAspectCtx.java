@@ -1,6 +1,7 @@
 package com.example.monilog;
 
 import com.google.common.base.Preconditions;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -10,8 +11,7 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author yp
@@ -19,9 +19,18 @@ import java.util.Map;
 @Getter
 @Slf4j
 class MoniLogAspectCtx {
-    private static final Map<Class<?>, Logger> LOGGERS = new HashMap<>();
-    private static final Map<Method, Class<?>> METHOD_CLS_CACHE = new HashMap<>();
+    /**
+     * 按目标类缓存各方法的元数据。值中的Method强引用目标类，缓存不会随类卸载而释放，条目数以被监控的方法数为上限
+     */
+    private static final ClassValue<ConcurrentHashMap<Method, MethodMeta>> METHOD_METAS = new ClassValue<ConcurrentHashMap<Method, MethodMeta>>() {
+        @Override
+        protected ConcurrentHashMap<Method, MethodMeta> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>(8);
+        }
+    };
     private final Method method;
+    @Getter(AccessLevel.NONE)
+    private final MethodMeta meta;
     private final Object[] args;
     private final Class<?> methodOwnedClass;
     @Setter
@@ -51,23 +60,12 @@ class MoniLogAspectCtx {
         this.method = proxy.getMethod();
         Preconditions.checkNotNull(method, "aspect方法为空");
         this.args = proxy.getArgs();
-        //找到指定方法的所属的接口，如果找不到接口，则返回方法的所属类
-        this.methodOwnedClass = getMethodCls(method);
-        Method targetMethod = null;
-        boolean isAbstract = Modifier.isAbstract(method.getModifiers());
-        if (isAbstract) {
-            try {
-                targetMethod = proxy.getTarget().getClass().getMethod(method.getName(), method.getParameterTypes());
-            } catch (NoSuchMethodException ignore) {
-            }
-        }
-        //找到方法上的注解，如果找不到则向上找类上的，如果还找不到，则再向上找接口上的
-        this.logParserAnnotation = ReflectUtil.getAnnotation(LogParser.class, methodOwnedClass, targetMethod, method);
-        MoniLog anno = ReflectUtil.getAnnotation(MoniLog.class, methodOwnedClass, targetMethod, method);
-        MoniLogTags logTags = ReflectUtil.getAnnotation(MoniLogTags.class, methodOwnedClass, targetMethod, method);
-        this.logPoint = anno == null ? LogPoint.unknown : anno.value();
-        this.tags = StringUtil.getTagArray(logTags);
-        this.metricName = logTags!= null ? logTags.metricName() : "";
+        this.meta = getMethodMeta(method, proxy.getTarget());
+        this.methodOwnedClass = meta.methodOwnedClass;
+        this.logParserAnnotation = meta.logParser;
+        this.logPoint = meta.logPoint;
+        this.tags = meta.tags;
+        this.metricName = meta.metricName;
     }
 
     public MoniLogAspectCtx buildResult(long cost, Object result, Throwable exception) {
@@ -127,29 +125,58 @@ class MoniLogAspectCtx {
     }
 
     public Logger getLogger() {
-        //这里一定要取调用者对应的类，不然日志中输出的类名就都是当前SystemAspect这个类了
-        Class<?> cls = method.getDeclaringClass();
-        if (LOGGERS.containsKey(cls)) {
-            return LOGGERS.get(cls);
-        }
-        Logger logger = LoggerFactory.getLogger(cls);
-        LOGGERS.put(cls, logger);
-        return logger;
+        return meta.logger;
     }
 
     /**
-     * 找到指定方法的所属的接口，如果找不到接口，则返回方法的所属类
+     * 获取方法的元数据。抽象方法需要结合目标类上的实现方法查找注解，因此以目标类为key；其余方法以声明类为key
      */
-    private static Class<?> getMethodCls(Method method) {
-        Class<?> cls = METHOD_CLS_CACHE.get(method);
-        if (cls != null) {
-            return cls;
+    private static MethodMeta getMethodMeta(Method method, Object target) {
+        boolean isAbstract = Modifier.isAbstract(method.getModifiers());
+        Class<?> keyCls = isAbstract && target != null ? target.getClass() : method.getDeclaringClass();
+        ConcurrentHashMap<Method, MethodMeta> metas = METHOD_METAS.get(keyCls);
+        MethodMeta meta = metas.get(method);
+        if (meta == null) {
+            meta = new MethodMeta(method, isAbstract ? keyCls : null);
+            MethodMeta existing = metas.putIfAbsent(method, meta);
+            if (existing != null) {
+                meta = existing;
+            }
         }
-        cls = ReflectUtil.getInterfaceByGivenMethod(method);
-        if (cls == null) {
-            cls = method.getDeclaringClass();
+        return meta;
+    }
+
+    /**
+     * 方法级的不可变元数据，每个方法(及目标类)仅解析一次
+     */
+    private static final class MethodMeta {
+        private final Class<?> methodOwnedClass;
+        private final LogParser logParser;
+        private final LogPoint logPoint;
+        private final String[] tags;
+        private final String metricName;
+        private final Logger logger;
+
+        MethodMeta(Method method, Class<?> targetCls) {
+            //找到指定方法的所属的接口，如果找不到接口，则返回方法的所属类
+            Class<?> cls = ReflectUtil.getInterfaceByGivenMethod(method);
+            this.methodOwnedClass = cls == null ? method.getDeclaringClass() : cls;
+            Method targetMethod = null;
+            if (targetCls != null) {
+                try {
+                    targetMethod = targetCls.getMethod(method.getName(), method.getParameterTypes());
+                } catch (NoSuchMethodException ignore) {
+                }
+            }
+            //找到方法上的注解，如果找不到则向上找类上的，如果还找不到，则再向上找接口上的
+            this.logParser = ReflectUtil.getAnnotation(LogParser.class, methodOwnedClass, targetMethod, method);
+            MoniLog anno = ReflectUtil.getAnnotation(MoniLog.class, methodOwnedClass, targetMethod, method);
+            MoniLogTags logTags = ReflectUtil.getAnnotation(MoniLogTags.class, methodOwnedClass, targetMethod, method);
+            this.logPoint = anno == null ? LogPoint.unknown : anno.value();
+            this.tags = StringUtil.getTagArray(logTags);
+            this.metricName = logTags != null ? logTags.metricName() : "";
+            //这里一定要取调用者对应的类，不然日志中输出的类名就都是当前SystemAspect这个类了
+            this.logger = LoggerFactory.getLogger(method.getDeclaringClass());
         }
-        METHOD_CLS_CACHE.put(method, cls);
-        return cls;
     }
 }
@@ -0,0 +1,227 @@
+package com.example.monilog;
+
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.example.monilog.MonilogMetrics.METRIC_PREFIX;
+
+/**
+ * 异步日志分发器：业务线程将参数快照写入有界环形队列，由后台线程完成打点与日志输出。
+ * 队列基于序号数组实现(Vyukov bounded queue)，入队/出队均为无锁CAS，支持多生产者与多消费者
+ *
+ * @author yp
+ * @date 2024/03/18
+ */
+final class MoniLogAsyncDispatcher {
+    private static final String PAYLOAD_ENQUEUE_NANOS = "ASYNC_ENQUEUE_NANOS";
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SHUTDOWN_DRAIN_MILLIS = 3000;
+    private static volatile MoniLogAsyncDispatcher instance;
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final MoniLogParams[] items;
+    private final long[] enqueueNanos;
+    private final AtomicLong enqueuePos = new AtomicLong();
+    private final AtomicLong dequeuePos = new AtomicLong();
+    private final Worker[] workers;
+    private final String[] appTags;
+
+    private MoniLogAsyncDispatcher(int queueSize, int workerThreads) {
+        int capacity = Integer.highestOneBit(Math.max(2, queueSize) - 1) << 1;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.items = new MoniLogParams[capacity];
+        this.enqueueNanos = new long[capacity];
+        this.workers = new Worker[Math.max(1, workerThreads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+            workers[i].start();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drainOnShutdown, "monilog-async-shutdown"));
+        this.appTags = TagBuilder.of("application", SpringUtils.application).toArray();
+        MonilogMetrics.gauge(METRIC_PREFIX + "async_queue_size", this, MoniLogAsyncDispatcher::size, appTags);
+    }
+
+    /**
+     * 获取分发器实例，首次调用时按当前配置创建队列与后台线程
+     */
+    static MoniLogAsyncDispatcher getInstance(MoniLogProperties.AsyncProperties cfg) {
+        MoniLogAsyncDispatcher dispatcher = instance;
+        if (dispatcher != null) {
+            return dispatcher;
+        }
+        synchronized (MoniLogAsyncDispatcher.class) {
+            if (instance == null) {
+                instance = new MoniLogAsyncDispatcher(cfg.getQueueSize(), cfg.getWorkerThreads());
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * 提交一条参数快照
+     *
+     * @return 若返回false，说明队列已满且按策略未能入队，调用方需自行处理(仅输出打点与摘要日志)
+     */
+    boolean dispatch(MoniLogParams snapshot, MoniLogProperties.AsyncProperties cfg) {
+        if (offer(snapshot)) {
+            wakeupWorker();
+            return true;
+        }
+        AsyncOverflowPolicy policy = cfg.getOverflowPolicy() == null ? AsyncOverflowPolicy.dropDetailKeepDigest : cfg.getOverflowPolicy();
+        switch (policy) {
+            case dropOldest:
+                for (int i = 0; i < 3; i++) {
+                    if (poll() != null) {
+                        recordDrop(AsyncOverflowPolicy.dropOldest);
+                    }
+                    if (offer(snapshot)) {
+                        wakeupWorker();
+                        return true;
+                    }
+                }
+                break;
+            case block:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, cfg.getBlockTimeoutMs()));
+                while (System.nanoTime() < deadline) {
+                    wakeupWorker();
+                    LockSupport.parkNanos(this, 50_000);
+                    if (offer(snapshot)) {
+                        return true;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        recordDrop(AsyncOverflowPolicy.dropDetailKeepDigest);
+        return false;
+    }
+
+    int size() {
+        long size = enqueuePos.get() - dequeuePos.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    private boolean offer(MoniLogParams p) {
+        long pos = enqueuePos.get();
+        for (; ; ) {
+            int idx = (int) (pos & mask);
+            long diff = sequences.get(idx) - pos;
+            if (diff == 0) {
+                if (enqueuePos.compareAndSet(pos, pos + 1)) {
+                    items[idx] = p;
+                    enqueueNanos[idx] = System.nanoTime();
+                    sequences.set(idx, pos + 1);
+                    return true;
+                }
+                pos = enqueuePos.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = enqueuePos.get();
+            }
+        }
+    }
+
+    private MoniLogParams poll() {
+        long pos = dequeuePos.get();
+        for (; ; ) {
+            int idx = (int) (pos & mask);
+            long diff = sequences.get(idx) - (pos + 1);
+            if (diff == 0) {
+                if (dequeuePos.compareAndSet(pos, pos + 1)) {
+                    MoniLogParams p = items[idx];
+                    long enqueuedAt = enqueueNanos[idx];
+                    items[idx] = null;
+                    sequences.set(idx, pos + mask + 1);
+                    p.addPayload(PAYLOAD_ENQUEUE_NANOS, enqueuedAt);
+                    return p;
+                }
+                pos = dequeuePos.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                pos = dequeuePos.get();
+            }
+        }
+    }
+
+    private void process(MoniLogParams p) {
+        try {
+            MoniLogUtil.doAsyncLog(p);
+        } catch (Throwable t) {
+            MoniLogUtil.innerDebug("async log error", t);
+        }
+        Object enqueuedAt = p.getPayload(PAYLOAD_ENQUEUE_NANOS);
+        if (enqueuedAt != null) {
+            Timer timer = MonilogMetrics.eventDuration(METRIC_PREFIX + "async_drain" + MonitorType.TIMER.getMark(), appTags);
+            if (timer != null) {
+                timer.record(System.nanoTime() - (long) enqueuedAt, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void wakeupWorker() {
+        for (Worker w : workers) {
+            if (w.idle) {
+                w.idle = false;
+                LockSupport.unpark(w);
+                return;
+            }
+        }
+    }
+
+    private static void recordDrop(AsyncOverflowPolicy policy) {
+        String[] tags = TagBuilder.of("application", SpringUtils.application, "policy", policy.name()).toArray();
+        MonilogMetrics.record(METRIC_PREFIX + "async_drop" + MonitorType.RECORD.getMark(), tags);
+    }
+
+    /**
+     * 应用停止时尽量输出队列中剩余的日志
+     */
+    private void drainOnShutdown() {
+        long deadline = System.currentTimeMillis() + SHUTDOWN_DRAIN_MILLIS;
+        MoniLogParams p;
+        while (System.currentTimeMillis() < deadline && (p = poll()) != null) {
+            process(p);
+        }
+    }
+
+    private final class Worker extends Thread {
+        private volatile boolean idle;
+
+        Worker(int index) {
+            super("monilog-async-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long parkNanos = 0;
+            for (; ; ) {
+                MoniLogParams p = poll();
+                if (p != null) {
+                    parkNanos = 0;
+                    process(p);
+                    continue;
+                }
+                //空闲时逐步退避，生产者入队时会主动唤醒
+                parkNanos = parkNanos == 0 ? 50_000 : Math.min(parkNanos << 1, MAX_IDLE_PARK_NANOS);
+                idle = true;
+                if (size() == 0) {
+                    LockSupport.parkNanos(this, parkNanos);
+                }
+                idle = false;
+            }
+        }
+    }
+}
@@ -132,7 +132,7 @@ final class MoniLogEnhancer implements SpringApplicationRunListener, Ordered {
         if (FLAGS.get(FEIGN_CLIENT).get()) {
             return;
         }
-        String newMethod = "{Throwable ex = null; feign.Response ret = null; long startTime = System.currentTimeMillis();" + "try {ret = this.convertResponse(this.convertAndSend($1, $2), $1);} catch(Throwable e){ex = e;} finally {" + "ret=" + FeignMoniLogInterceptor.class.getCanonicalName() + ".doRecord($1, ret, System.currentTimeMillis()-startTime, ex);" + "if (ex != null) {throw ex;}}return ret;}";
+        String newMethod = "{if (!" + FeignMoniLogInterceptor.class.getCanonicalName() + ".isEnable()) {return this.convertResponse(this.convertAndSend($1, $2), $1);}" + "Throwable ex = null; feign.Response ret = null; long startTime = System.currentTimeMillis();" + "try {ret = this.convertResponse(this.convertAndSend($1, $2), $1);} catch(Throwable e){ex = e;} finally {" + "ret=" + FeignMoniLogInterceptor.class.getCanonicalName() + ".doRecord($1, ret, System.currentTimeMillis()-startTime, ex);" + "if (ex != null) {throw ex;}}return ret;}";
         try {
             CtClass ctCls = getCtClass(FEIGN_CLIENT);
             CtClass[] nestedClasses = ctCls.getNestedClasses();
@@ -200,7 +200,8 @@ final class MoniLogEnhancer implements SpringApplicationRunListener, Ordered {
         try {
             String targetMethod = "invoke";
             String targetMethodDesc = "(Lorg/springframework/messaging/Message;[Ljava/lang/Object;)Ljava/lang/Object;";
-            String newBody = "{"+MoniLogParams.class.getCanonicalName()+" mp = " + KafkaMonilogInterceptor.ConsumerInterceptor.class.getCanonicalName() + ".beforeInvoke($1, $2);" +
+            String newBody = "{if (!" + KafkaMonilogInterceptor.ConsumerInterceptor.class.getCanonicalName() + ".isEnable()) {return __invoke($1, $2);}" +
+                    MoniLogParams.class.getCanonicalName() + " mp = " + KafkaMonilogInterceptor.ConsumerInterceptor.class.getCanonicalName() + ".beforeInvoke($1, $2);" +
                     "Exception ex = null;Object result = null;long start = System.currentTimeMillis();" +
                     "try{result = __invoke($1, $2);} catch (Exception e) {ex = e;throw e;} finally {" +
                     KafkaMonilogInterceptor.ConsumerInterceptor.class.getCanonicalName() + ".afterInvoke(mp, start, ex, result);}return result;}";
@@ -228,7 +229,8 @@ final class MoniLogEnhancer implements SpringApplicationRunListener, Ordered {
         try {
             String targetMethod = "send";
             String targetMethodDesc = "(Lorg/apache/kafka/clients/producer/ProducerRecord;Lorg/apache/kafka/clients/producer/Callback;)Ljava/util/concurrent/Future;";
-            String newBody = "{" + MoniLogParams.class.getCanonicalName() + " mp = " + KafkaMonilogInterceptor.ProducerInterceptor.class.getCanonicalName() + ".beforeSend($1);" +
+            String newBody = "{if (!" + KafkaMonilogInterceptor.ProducerInterceptor.class.getCanonicalName() + ".isEnable()) {return __send($1, $2);}" +
+                    MoniLogParams.class.getCanonicalName() + " mp = " + KafkaMonilogInterceptor.ProducerInterceptor.class.getCanonicalName() + ".beforeSend($1);" +
                     "return __send($1,new " + KafkaMonilogInterceptor.ProducerInterceptor.KfkSendCallback.class.getCanonicalName() + "($2, System.currentTimeMillis(), mp));}";
             CtClass ctCls = getCtClass(clsName);
             CtMethod originalMethod = ctCls.getMethod(targetMethod, targetMethodDesc);
@@ -378,11 +380,12 @@ final class MoniLogEnhancer implements SpringApplicationRunListener, Ordered {
         }
         String methodName1 = "getConnection";
         String methodDesc1 = "()Lorg/springframework/data/redis/connection/RedisConnection;";
-        String body1 = "{long start = System.currentTimeMillis();org.springframework.data.redis.connection.RedisConnection conn;" + "try {conn = __getConnection();} catch (Throwable e) {" + RedisMoniLogInterceptor.RedisConnectionFactoryInterceptor.class.getCanonicalName() + ".redisRecordException(e, System.currentTimeMillis() - start);throw e;}" + "return " + RedisMoniLogInterceptor.RedisConnectionFactoryInterceptor.class.getCanonicalName() + ".buildProxyForRedisConnection(conn);}";
+        String interceptorCls = RedisMoniLogInterceptor.RedisConnectionFactoryInterceptor.class.getCanonicalName();
+        String body1 = "{if (!" + interceptorCls + ".isEnable()) {return __getConnection();}" + "long start = System.currentTimeMillis();org.springframework.data.redis.connection.RedisConnection conn;" + "try {conn = __getConnection();} catch (Throwable e) {" + RedisMoniLogInterceptor.RedisConnectionFactoryInterceptor.class.getCanonicalName() + ".redisRecordException(e, System.currentTimeMillis() - start);throw e;}" + "return " + RedisMoniLogInterceptor.RedisConnectionFactoryInterceptor.class.getCanonicalName() + ".buildProxyForRedisConnection(conn);}";
 
         String methodName2 = "getClusterConnection";
         String methodDesc2 = "()Lorg/springframework/data/redis/connection/RedisClusterConnection;";
-        String body2 = "{long start = System.currentTimeMillis();org.springframework.data.redis.connection.RedisClusterConnection conn;" + "try {conn = __getClusterConnection();} catch (Throwable e) {" + RedisMoniLogInterceptor.RedisConnectionFactoryInterceptor.class.getCanonicalName() + ".redisRecordException(e, System.currentTimeMillis() - start);throw e;}" + "return " + RedisMoniLogInterceptor.RedisConnectionFactoryInterceptor.class.getCanonicalName() + ".buildProxyForRedisClusterConnection(conn);}";
+        String body2 = "{if (!" + interceptorCls + ".isEnable()) {return __getClusterConnection();}" + "long start = System.currentTimeMillis();org.springframework.data.redis.connection.RedisClusterConnection conn;" + "try {conn = __getClusterConnection();} catch (Throwable e) {" + RedisMoniLogInterceptor.RedisConnectionFactoryInterceptor.class.getCanonicalName() + ".redisRecordException(e, System.currentTimeMillis() - start);throw e;}" + "return " + RedisMoniLogInterceptor.RedisConnectionFactoryInterceptor.class.getCanonicalName() + ".buildProxyForRedisClusterConnection(conn);}";
         try {
             CtClass ctCls = getCtClass(factoryFullPath);
             CtMethod originalMethod1 = ctCls.getMethod(methodName1, methodDesc1);
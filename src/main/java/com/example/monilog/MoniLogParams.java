@@ -1,7 +1,5 @@
 package com.example.monilog;
 
-import cn.hutool.core.bean.copier.BeanCopier;
-import cn.hutool.core.bean.copier.CopyOptions;
 import com.alibaba.fastjson.JSON;
 import com.google.common.collect.Lists;
 import lombok.Getter;
@@ -25,6 +23,14 @@ public class MoniLogParams implements Serializable {
     static final String PAYLOAD_FORMATTED_INPUT = "FORMATTED_INPUT";
     static final String REQUEST_TRACE_ID = "REQ_TRACE_ID";
     static final String REQUEST_SPAN_ID = "REQ_SPAN_ID";
+    /**
+     * 入队时trace的采样决策，供异步线程上的日志采样使用
+     */
+    static final String REQUEST_TRACE_SAMPLED = "REQ_TRACE_SAMPLED";
+    /**
+     * 详情日志已被跳过(如异步队列已满)，摘要日志需按详情日志不输出的情况确定级别
+     */
+    static final String PAYLOAD_DETAIL_SKIPPED = "DETAIL_SKIPPED";
     private static final long serialVersionUID = 1L;
     private Class<?> serviceCls;
     private LogPoint logPoint;
@@ -64,14 +70,57 @@ public class MoniLogParams implements Serializable {
         addPayload(REQUEST_SPAN_ID, MoniLogUtil.getSpanId());
     }
 
+    private MoniLogParams(Map<String, Object> payload) {
+        this.payload = payload;
+    }
+
+    /**
+     * 生成一份供异步输出使用的快照，快照入队后不会再被业务线程修改。
+     * 同时记录入队时刻的trace信息，以便后台线程输出日志时还原
+     */
+    MoniLogParams snapshot() {
+        MoniLogParams target = new MoniLogParams(new HashMap<>(this.payload));
+        target.serviceCls = this.serviceCls;
+        target.logPoint = this.logPoint;
+        target.service = this.service;
+        target.action = this.action;
+        target.success = this.success;
+        target.msgCode = this.msgCode;
+        target.msgInfo = this.msgInfo;
+        target.cost = this.cost;
+        target.exception = this.exception;
+        target.input = this.input == null ? null : this.input.clone();
+        target.output = this.output;
+        target.tags = this.tags == null ? null : this.tags.clone();
+        target.userTags = this.userTags == null ? null : this.userTags.clone();
+        target.userMetricName = this.userMetricName;
+        target.addPayload(REQUEST_TRACE_ID, MoniLogUtil.getTraceId());
+        target.addPayload(REQUEST_SPAN_ID, MoniLogUtil.getSpanId());
+        target.addPayload(REQUEST_TRACE_SAMPLED, MoniLogUtil.isTraceSampled());
+        return target;
+    }
+
     /**
-     * copy一份
+     * copy一份(浅拷贝)，payload复制为独立的Map，避免副本间互相影响
      */
     MoniLogParams copy() {
-        MoniLogParams target = new MoniLogParams();
-        CopyOptions options = CopyOptions.create().setTransientSupport(false);
-        BeanCopier<MoniLogParams> copier = BeanCopier.create(this, target, options);
-        copier.copy();
+        MoniLogParams target = new MoniLogParams(new HashMap<>(this.payload));
+        target.serviceCls = this.serviceCls;
+        target.logPoint = this.logPoint;
+        target.service = this.service;
+        target.action = this.action;
+        target.success = this.success;
+        // 与按getter复制保持一致
+        target.msgCode = getMsgCode();
+        target.msgInfo = getMsgInfo();
+        target.cost = this.cost;
+        target.exception = this.exception;
+        target.input = this.input;
+        target.output = this.output;
+        target.tags = this.tags;
+        target.userTags = this.userTags;
+        target.userMetricName = this.userMetricName;
+        target.outdated = this.outdated;
         return target;
     }
 
@@ -106,6 +106,14 @@ class MoniLogProperties implements InitializingBean {
      * httpClient监控配置
      */
     private HttpClientProperties httpclient = new HttpClientProperties();
+    /**
+     * 异步日志输出配置
+     */
+    private AsyncProperties async = new AsyncProperties();
+    /**
+     * 出站http请求的url路由模板学习配置
+     */
+    private RouteTemplateProperties routeTemplate = new RouteTemplateProperties();
 
     public String getAppName() {
         if (StringUtils.isNotBlank(this.appName)) {
@@ -140,6 +148,7 @@ class MoniLogProperties implements InitializingBean {
         ApplicationContext applicationContext = SpringUtils.getApplicationContext();
         if (applicationContext == null) {
             log.warn(MoniLogUtil.INNER_DEBUG_LOG_PREFIX + "properties bind failed,applicationCtx is null");
+            MoniLogRuntimeConfig.refresh(this);
             return;
         }
         try {
@@ -165,6 +174,8 @@ class MoniLogProperties implements InitializingBean {
             }
         } finally {
             resetDefaultBoolExpr(this.getFeign(), this.getHttpclient(), this.getGlobalDefaultBoolExpr());
+            // 所有配置替换完成后再整体发布运行时快照
+            MoniLogRuntimeConfig.refresh(this);
         }
     }
 
@@ -209,6 +220,14 @@ class MoniLogProperties implements InitializingBean {
          * 默认详情日志打印最长的长度，目前仅限制了收集参数中的input与output的长度
          */
         private Integer maxTextLen = 10000;
+        /**
+         * 详情日志中集合、数组、Map最多输出的元素个数，超出部分以"..."代替. 默认1000
+         */
+        private int maxCollectionSize = 1000;
+        /**
+         * 详情日志中参数的最大嵌套深度，超出部分以"..."代替. 默认16
+         */
+        private int maxDepth = 16;
         /**
          * 日志打印时要排除的组件名称列表，默认为空，即所有类型的都会打印。支持的组件名称参考ComponentEnum
          */
@@ -242,6 +261,10 @@ class MoniLogProperties implements InitializingBean {
          * 日志输出级别配置
          */
         private LogLevelConfig logLevel = new LogLevelConfig();
+        /**
+         * 日志采样与限流配置
+         */
+        private SamplingProperties sampling = new SamplingProperties();
     }
 
     @Getter
@@ -261,6 +284,51 @@ class MoniLogProperties implements InitializingBean {
         private LogLevel largeSize = LogLevel.ERROR;
     }
 
+    @Getter
+    @Setter
+    static class SamplingProperties {
+        /**
+         * 开启日志采样与限流，开启后在错误风暴等场景下限制日志输出量，仅影响日志，不影响监控打点. 默认关闭
+         */
+        private boolean enable = false;
+        /**
+         * 是否对摘要日志也进行采样，默认仅对详情日志采样
+         */
+        private boolean sampleDigest = false;
+        /**
+         * 头部采样率，取值[0,1]，同一条trace下的日志采样结果一致. 默认1，即不做头部采样
+         */
+        private double headSampleRate = 1.0;
+        /**
+         * 头部采样时是否遵循trace上下文中已有的采样决策，默认遵循
+         */
+        private boolean followTraceDecision = true;
+        /**
+         * 统计窗口，单位毫秒. 默认1000ms
+         */
+        private long windowMillis = 1000;
+        /**
+         * 每个(logPoint, service, action, msgCode)在一个窗口内全量输出的前N条日志，默认10
+         */
+        private int firstN = 10;
+        /**
+         * 超过firstN后，每M条输出1条；小于等于0时超出部分全部丢弃. 默认100
+         */
+        private int thenOneIn = 100;
+        /**
+         * 每个(logPoint, service, action, msgCode)每秒最多输出的日志条数，小于等于0表示不限制. 默认不限制
+         */
+        private double ratePerSecond = 0;
+        /**
+         * 令牌桶允许的突发条数，默认20
+         */
+        private int burst = 20;
+        /**
+         * 最多跟踪的(logPoint, service, action, msgCode)组合数，超过后新组合共用同一个限流状态. 默认10000
+         */
+        private int maxKeys = 10000;
+    }
+
     @Getter
     @Setter
     static class WebProperties {
@@ -281,6 +349,10 @@ class MoniLogProperties implements InitializingBean {
          * web慢接口，单位毫秒.
          */
         private long longRt = 3000;
+        /**
+         * 响应体最多捕获的字节数，用于日志输出与结果解析；超出部分直接输出给客户端，不再缓存
+         */
+        private int maxResponseCaptureBytes = 50000;
 
     }
 
@@ -507,4 +579,60 @@ class MoniLogProperties implements InitializingBean {
             this.defaultBoolExpr = ResultParser.mergeBoolExpr(globalDefaultBoolExpr, defaultBoolExpr);
         }
     }
+
+    @Getter
+    @Setter
+    static class AsyncProperties {
+        /**
+         * 开启异步输出：开启后，打点与日志格式化、输出均由后台线程完成，业务线程仅负责入队. 默认关闭
+         * 注意：入队时只会复制参数容器本身，input/output中的业务对象若在调用返回后被修改，日志中可能体现修改后的内容
+         */
+        private boolean enable = false;
+        /**
+         * 队列容量(不支持运行时修改)，会向上取整为2的幂，默认8192
+         */
+        private int queueSize = 8192;
+        /**
+         * 后台消费线程数(不支持运行时修改)，默认1
+         */
+        private int workerThreads = 1;
+        /**
+         * 队列写满时的处理策略，默认丢弃详情日志、保留打点及摘要日志
+         */
+        private AsyncOverflowPolicy overflowPolicy = AsyncOverflowPolicy.dropDetailKeepDigest;
+        /**
+         * 当overflowPolicy为block时，调用线程的最长等待时间，单位毫秒. 默认100ms
+         */
+        private long blockTimeoutMs = 100;
+    }
+
+    @Getter
+    @Setter
+    static class RouteTemplateProperties {
+        /**
+         * 开启url路由模板学习：按host记录各层路径片段，同一位置出现的不同取值超过阈值后折叠为{var}，
+         * 纯数字片段直接替换为{n}；关闭时使用启发式的随机串识别. 默认关闭，开启后url tag的取值会变化
+         */
+        private boolean enable;
+        /**
+         * 同一位置不同取值的个数超过该阈值时折叠为{var}，默认50
+         */
+        private int collapseThreshold = 50;
+        /**
+         * 单个host下最多记录的路径节点数，超过后未知片段一律视为{var}，默认10000
+         */
+        private int maxNodesPerHost = 10000;
+        /**
+         * 最多记录的host数，超过后新host共用同一棵路由树，默认500
+         */
+        private int maxHosts = 500;
+        /**
+         * 是否将已折叠的路由位置持久化到本地文件，重启后继续生效. 默认关闭
+         */
+        private boolean persist;
+        /**
+         * 持久化目录(不支持运行时修改)，默认: ${user.home}/.monilog，文件名为route-templates-{应用名}.txt
+         */
+        private String storeDir;
+    }
 }
@@ -0,0 +1,194 @@
+package com.example.monilog;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 运行时配置快照：每次绑定配置(启动及apollo配置变更)后由{@link MoniLogProperties}编译一份不可变的快照，通过volatile引用整体替换。
+ * 调用链路上的开关、日志级别、慢调用阈值判断只读取快照中的字段/数组，不再获取bean、逐级访问嵌套配置
+ *
+ * @author yp
+ * @date 2024/04/08
+ */
+final class MoniLogRuntimeConfig {
+    /**
+     * 配置尚未绑定时使用：所有组件均不开启
+     */
+    private static final MoniLogRuntimeConfig UNBOUND = new MoniLogRuntimeConfig();
+    private static volatile MoniLogRuntimeConfig current;
+
+    /**
+     * 配置是否已绑定
+     */
+    private final boolean bound;
+    private final boolean enable;
+    private final boolean enableMonitor;
+    private final boolean debug;
+    /**
+     * 按ComponentEnum序号记录的组件开关
+     */
+    private final long componentMask;
+    /**
+     * 按LogPoint序号记录的详情日志级别
+     */
+    private final LogOutputLevel[] detailLogLevels;
+    /**
+     * 按LogPoint序号记录的慢调用阈值，未开启慢调用监控时为-1
+     */
+    private final long[] longRtThresholds;
+    private final LogOutputLevel digestLogLevel;
+    private final LogLongRtLevel longRtLevel;
+    private final LogLevel falseResultLogLevel;
+    private final LogLevel longRtLogLevel;
+    private final LogLevel largeSizeLogLevel;
+    /**
+     * 已修正(去除首尾逗号、合并"+"开头的追加表达式)的全局默认判别式
+     */
+    private final String defaultBoolExpr;
+
+    private MoniLogRuntimeConfig() {
+        this.bound = false;
+        this.enable = false;
+        this.enableMonitor = false;
+        this.debug = false;
+        this.componentMask = 0;
+        this.detailLogLevels = new LogOutputLevel[LogPoint.values().length];
+        this.longRtThresholds = new long[LogPoint.values().length];
+        for (LogPoint logPoint : LogPoint.values()) {
+            detailLogLevels[logPoint.ordinal()] = LogOutputLevel.none;
+            longRtThresholds[logPoint.ordinal()] = -1;
+        }
+        this.digestLogLevel = LogOutputLevel.always;
+        this.longRtLevel = LogLongRtLevel.none;
+        this.falseResultLogLevel = LogLevel.ERROR;
+        this.longRtLogLevel = LogLevel.ERROR;
+        this.largeSizeLogLevel = LogLevel.ERROR;
+        this.defaultBoolExpr = null;
+    }
+
+    private MoniLogRuntimeConfig(MoniLogProperties properties) {
+        this.bound = true;
+        this.enable = properties.isEnable();
+        this.enableMonitor = properties.isEnableMonitor();
+        this.debug = properties.isDebug();
+        long mask = 0;
+        for (ComponentEnum component : ComponentEnum.values()) {
+            if (component.isEnable(properties)) {
+                mask |= 1L << component.ordinal();
+            }
+        }
+        this.componentMask = mask;
+        this.detailLogLevels = new LogOutputLevel[LogPoint.values().length];
+        this.longRtThresholds = new long[LogPoint.values().length];
+        for (LogPoint logPoint : LogPoint.values()) {
+            LogOutputLevel detailLogLevel = LogOutputLevel.none;
+            long longRt = -1;
+            try {
+                detailLogLevel = logPoint.getDetailLogLevel(properties);
+                longRt = logPoint.getLongRtThreshold(properties);
+            } catch (Exception e) {
+                MoniLogUtil.innerDebug("compile config of {} error", logPoint, e);
+            }
+            detailLogLevels[logPoint.ordinal()] = detailLogLevel;
+            longRtThresholds[logPoint.ordinal()] = longRt;
+        }
+        MoniLogProperties.PrinterProperties printerCfg = properties.getPrinter();
+        LogOutputLevel digest = printerCfg == null ? null : printerCfg.getDigestLogLevel();
+        this.digestLogLevel = digest == null ? LogOutputLevel.always : digest;
+        LogLongRtLevel rtLevel = printerCfg == null ? null : printerCfg.getLongRtLevel();
+        this.longRtLevel = rtLevel == null ? LogLongRtLevel.none : rtLevel;
+        MoniLogProperties.LogLevelConfig levelCfg = printerCfg == null || printerCfg.getLogLevel() == null
+                ? new MoniLogProperties.LogLevelConfig() : printerCfg.getLogLevel();
+        this.falseResultLogLevel = levelCfg.getFalseResult() == null ? LogLevel.ERROR : levelCfg.getFalseResult();
+        this.longRtLogLevel = levelCfg.getLongRt() == null ? LogLevel.ERROR : levelCfg.getLongRt();
+        this.largeSizeLogLevel = levelCfg.getLargeSize() == null ? LogLevel.ERROR : levelCfg.getLargeSize();
+        this.defaultBoolExpr = correctBoolExpr(properties.getGlobalDefaultBoolExpr());
+    }
+
+    /**
+     * 由绑定完成的配置编译新的快照并替换当前快照
+     */
+    static void refresh(MoniLogProperties properties) {
+        try {
+            current = new MoniLogRuntimeConfig(properties);
+        } catch (Exception e) {
+            MoniLogUtil.innerDebug("compile monilog runtime config error", e);
+        }
+    }
+
+    static MoniLogRuntimeConfig get() {
+        MoniLogRuntimeConfig config = current;
+        if (config != null) {
+            return config;
+        }
+        // 配置bean可能尚未初始化，获取bean时会完成绑定并编译快照
+        SpringUtils.getBeanWithoutException(MoniLogProperties.class);
+        config = current;
+        return config == null ? UNBOUND : config;
+    }
+
+    /**
+     * 去除首尾逗号，"+"开头时追加到默认判别式之后
+     */
+    static String correctBoolExpr(String boolExpr) {
+        if (StringUtils.isNotBlank(boolExpr)) {
+            boolExpr = StringUtils.strip(boolExpr, ",");
+            if (StringUtils.startsWith(boolExpr, "+")) {
+                boolExpr = boolExpr.substring(1) + "," + ResultParser.Default_Bool_Expr;
+            }
+        }
+        return boolExpr;
+    }
+
+    boolean isBound() {
+        return bound;
+    }
+
+    boolean isEnable() {
+        return enable;
+    }
+
+    boolean isEnableMonitor() {
+        return enableMonitor;
+    }
+
+    boolean isDebug() {
+        return debug;
+    }
+
+    boolean isEnable(ComponentEnum component) {
+        return (componentMask & (1L << component.ordinal())) != 0;
+    }
+
+    LogOutputLevel getDetailLogLevel(LogPoint logPoint) {
+        return detailLogLevels[logPoint.ordinal()];
+    }
+
+    boolean exceedLongRtThreshold(LogPoint logPoint, long cost) {
+        long threshold = longRtThresholds[logPoint.ordinal()];
+        return threshold > 0 && cost > threshold;
+    }
+
+    LogOutputLevel getDigestLogLevel() {
+        return digestLogLevel;
+    }
+
+    LogLongRtLevel getLongRtLevel() {
+        return longRtLevel;
+    }
+
+    LogLevel getFalseResultLogLevel() {
+        return falseResultLogLevel;
+    }
+
+    LogLevel getLongRtLogLevel() {
+        return longRtLogLevel;
+    }
+
+    LogLevel getLargeSizeLogLevel() {
+        return largeSizeLogLevel;
+    }
+
+    String getDefaultBoolExpr() {
+        return defaultBoolExpr;
+    }
+}
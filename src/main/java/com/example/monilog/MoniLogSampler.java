@@ -0,0 +1,185 @@
+package com.example.monilog;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.example.monilog.MonilogMetrics.METRIC_PREFIX;
+
+/**
+ * 日志采样与限流：在摘要/详情日志真正输出前，依次进行头部采样(与trace的采样决策保持一致)、
+ * 按(logPoint, service, action, msgCode)维度的"窗口内前N条全量，之后每M条取1条"以及令牌桶限流。
+ * 被抑制的日志仅计数，不影响监控打点
+ *
+ * @author yp
+ * @date 2024/03/25
+ */
+final class MoniLogSampler {
+    private static final String KIND_DIGEST = "digest";
+    private static final String KIND_DETAIL = "detail";
+    private static final String REASON_HEAD = "head";
+    private static final String REASON_WINDOW = "window";
+    private static final String REASON_RATE = "rate";
+    /**
+     * key数量超过上限后，新出现的key共用同一个限流状态
+     */
+    private static final String OVERFLOW_KEY = "__overflow__";
+
+    private static final ConcurrentHashMap<String, KeyState> STATES = new ConcurrentHashMap<>();
+    private static volatile MoniLogProperties.SamplingProperties boundCfg;
+
+    private MoniLogSampler() {
+    }
+
+    /**
+     * 摘要日志是否可以输出
+     */
+    static boolean tryAcquireDigest(MoniLogParams p, MoniLogProperties.SamplingProperties cfg) {
+        if (cfg == null || !cfg.isEnable() || !cfg.isSampleDigest()) {
+            return true;
+        }
+        return tryAcquire(p, cfg, KIND_DIGEST);
+    }
+
+    /**
+     * 详情日志是否可以输出
+     */
+    static boolean tryAcquireDetail(MoniLogParams p, MoniLogProperties.SamplingProperties cfg) {
+        if (cfg == null || !cfg.isEnable()) {
+            return true;
+        }
+        return tryAcquire(p, cfg, KIND_DETAIL);
+    }
+
+    private static boolean tryAcquire(MoniLogParams p, MoniLogProperties.SamplingProperties cfg, String kind) {
+        if (!headSampled(p, cfg)) {
+            recordSuppressed(p, kind, REASON_HEAD);
+            return false;
+        }
+        boolean windowLimited = cfg.getFirstN() > 0 || cfg.getThenOneIn() > 1;
+        boolean rateLimited = cfg.getRatePerSecond() > 0;
+        if (!windowLimited && !rateLimited) {
+            return true;
+        }
+        KeyState state = getState(p, cfg, kind);
+        long now = System.nanoTime();
+        String reason = state.tryAcquire(now, cfg, windowLimited, rateLimited);
+        if (reason != null) {
+            recordSuppressed(p, kind, reason);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 头部采样：同一条trace下的日志要么都保留要么都丢弃。若trace已有采样决策且配置为遵循，则直接使用该决策，
+     * 否则按traceId的哈希值确定性地采样；没有traceId时随机采样
+     */
+    private static boolean headSampled(MoniLogParams p, MoniLogProperties.SamplingProperties cfg) {
+        double rate = cfg.getHeadSampleRate();
+        if (rate >= 1.0) {
+            return true;
+        }
+        if (rate <= 0) {
+            return false;
+        }
+        if (cfg.isFollowTraceDecision()) {
+            Object sampled = p.getPayload(MoniLogParams.REQUEST_TRACE_SAMPLED);
+            if (sampled == null) {
+                sampled = MoniLogUtil.isTraceSampled();
+            }
+            if (sampled != null) {
+                return (Boolean) sampled;
+            }
+        }
+        Object traceId = p.getPayload(MoniLogParams.REQUEST_TRACE_ID);
+        if (traceId == null) {
+            traceId = MoniLogUtil.getTraceId();
+        }
+        if (traceId == null) {
+            return ThreadLocalRandom.current().nextDouble() < rate;
+        }
+        long h = mix(traceId.toString().hashCode());
+        // 取低53位映射到[0,1)
+        return (h & ((1L << 53) - 1)) * 0x1.0p-53 < rate;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static KeyState getState(MoniLogParams p, MoniLogProperties.SamplingProperties cfg, String kind) {
+        if (boundCfg != cfg) {
+            // 配置变更后丢弃旧的限流状态
+            synchronized (MoniLogSampler.class) {
+                if (boundCfg != cfg) {
+                    STATES.clear();
+                    boundCfg = cfg;
+                }
+            }
+        }
+        String logPoint = p.getLogPoint() == null ? null : p.getLogPoint().name();
+        String key = kind + '|' + logPoint + '|' + p.getService() + '|' + p.getAction() + '|' + p.getMsgCode();
+        KeyState state = STATES.get(key);
+        if (state != null) {
+            return state;
+        }
+        if (STATES.size() >= cfg.getMaxKeys()) {
+            key = OVERFLOW_KEY;
+        }
+        return STATES.computeIfAbsent(key, k -> new KeyState());
+    }
+
+    private static void recordSuppressed(MoniLogParams p, String kind, String reason) {
+        String logPoint = p.getLogPoint() == null ? LogPoint.unknown.name() : p.getLogPoint().name();
+        String[] tags = TagBuilder.of("application", SpringUtils.application, "logPoint", logPoint).add("kind", kind).add("reason", reason).toArray();
+        MonilogMetrics.record(METRIC_PREFIX + "log_suppressed" + MonitorType.RECORD.getMark(), tags);
+    }
+
+    /**
+     * 单个key的采样状态
+     */
+    private static final class KeyState {
+        private long windowStart;
+        private long windowCount;
+        /**
+         * GCRA算法中下一个请求的理论到达时间
+         */
+        private long tat;
+        private boolean tatInitialized;
+
+        /**
+         * @return 若被抑制，返回抑制原因；否则返回null
+         */
+        synchronized String tryAcquire(long now, MoniLogProperties.SamplingProperties cfg, boolean windowLimited, boolean rateLimited) {
+            if (windowLimited) {
+                long windowNanos = Math.max(1, cfg.getWindowMillis()) * 1_000_000L;
+                if (now - windowStart >= windowNanos || windowCount == 0) {
+                    windowStart = now;
+                    windowCount = 0;
+                }
+                long n = ++windowCount;
+                if (n > cfg.getFirstN()) {
+                    int m = cfg.getThenOneIn();
+                    if (m <= 0 || (n - cfg.getFirstN()) % m != 0) {
+                        return REASON_WINDOW;
+                    }
+                }
+            }
+            if (rateLimited) {
+                long interval = (long) (1_000_000_000L / cfg.getRatePerSecond());
+                long tolerance = interval * Math.max(0, cfg.getBurst() - 1);
+                if (!tatInitialized) {
+                    tat = now;
+                    tatInitialized = true;
+                }
+                if (now < tat - tolerance) {
+                    return REASON_RATE;
+                }
+                tat = Math.max(tat, now) + interval;
+            }
+            return null;
+        }
+    }
+}
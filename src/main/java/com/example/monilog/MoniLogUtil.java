@@ -1,8 +1,8 @@
 package com.example.monilog;
 
 import ch.qos.logback.classic.spi.EventArgUtil;
-import com.carrotsearch.sizeof.RamUsageEstimator;
 import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
 import io.opentelemetry.api.trace.SpanId;
 import io.opentelemetry.api.trace.TraceId;
 import lombok.extern.slf4j.Slf4j;
@@ -11,7 +11,6 @@ import org.slf4j.MDC;
 
 import javax.annotation.Nullable;
 import java.util.Objects;
-import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.TimeUnit;
@@ -80,6 +79,44 @@ class MoniLogUtil {
     }
 
     static void log(MoniLogParams logParams) {
+        MoniLogProperties properties = getLogProperties();
+        MoniLogProperties.AsyncProperties asyncCfg = properties == null ? null : properties.getAsync();
+        if (asyncCfg != null && asyncCfg.isEnable()) {
+            logAsync(logParams, asyncCfg);
+        } else {
+            doLog(logParams);
+        }
+        logParams.setOutdated(true);
+    }
+
+    /**
+     * 异步模式下由后台线程调用，还原入队时的trace信息后输出
+     */
+    static void doAsyncLog(MoniLogParams logParams) {
+        try {
+            doLog(logParams);
+        } finally {
+            MDC.remove("trace_id");
+            MDC.remove("span_id");
+        }
+    }
+
+    private static void logAsync(MoniLogParams logParams, MoniLogProperties.AsyncProperties asyncCfg) {
+        try {
+            if (MoniLogAsyncDispatcher.getInstance(asyncCfg).dispatch(logParams.snapshot(), asyncCfg)) {
+                return;
+            }
+        } catch (Exception e) {
+            innerDebug("async dispatch error", e);
+            doLog(logParams);
+            return;
+        }
+        // 队列已满，在当前线程完成打点与摘要日志，放弃详情日志
+        logParams.addPayload(MoniLogParams.PAYLOAD_DETAIL_SKIPPED, Boolean.TRUE);
+        doLog(logParams);
+    }
+
+    private static void doLog(MoniLogParams logParams) {
         setTraceAndSpanIdIfMissing(logParams.getPayload(MoniLogParams.REQUEST_TRACE_ID), logParams.getPayload(MoniLogParams.REQUEST_SPAN_ID));
         try {
             doMonitor(logParams);
@@ -101,7 +138,6 @@ class MoniLogUtil {
         } catch (Exception e) {
             innerDebug("printDetailLog error", e);
         }
-        logParams.setOutdated(true);
     }
 
     /**
@@ -133,70 +169,76 @@ class MoniLogUtil {
             return;
         }
         TagBuilder systemTags = getSystemTags(logParams);
-        LogPoint logPoint = logParams.getLogPoint();
-        if (logPoint == null) {
-            logPoint = LogPoint.unknown;
-        }
-        String[] allTags = systemTags.add(logParams.getTags()).toArray();
+        try {
+            LogPoint logPoint = logParams.getLogPoint();
+            if (logPoint == null) {
+                logPoint = LogPoint.unknown;
+            }
+            systemTags.add(logParams.getTags());
 
-        String name = METRIC_PREFIX + logPoint.name();
-        MonilogMetrics.record(name + MonitorType.RECORD.getMark(), allTags);
-        // 耗时只打印基础tag
-        Objects.requireNonNull(MonilogMetrics.eventDuration(name + MonitorType.TIMER.getMark(), systemTags.toArray())).record(logParams.getCost(), TimeUnit.MILLISECONDS);
+            String name = METRIC_PREFIX + logPoint.name();
+            MonilogMetrics.record(name + MonitorType.RECORD.getMark(), systemTags);
+            // 耗时只打印基础tag
+            Objects.requireNonNull(MonilogMetrics.eventDuration(name + MonitorType.TIMER.getMark(), systemTags)).record(logParams.getCost(), TimeUnit.MILLISECONDS);
 
-        if (logParams.getUserTags() != null || StringUtils.isNotBlank(logParams.getUserMetricName())) {
-            name = StringUtils.isNotBlank(logParams.getUserMetricName()) ? SpringUtils.application + "_" + logParams.getUserMetricName() : name + logParams.getService() + "_" + logParams.getAction();;
-            allTags = systemTags.add(logParams.getUserTags()).add(logParams.getTags()).toArray();
+            if (logParams.getUserTags() != null || StringUtils.isNotBlank(logParams.getUserMetricName())) {
+                name = StringUtils.isNotBlank(logParams.getUserMetricName()) ? SpringUtils.application + "_" + logParams.getUserMetricName() : name + logParams.getService() + "_" + logParams.getAction();
+                systemTags.add(logParams.getUserTags()).add(logParams.getTags());
 
-            MonilogMetrics.record(name + MonitorType.RECORD.getMark(), allTags);
-            Objects.requireNonNull(MonilogMetrics.eventDuration(name + MonitorType.TIMER.getMark(), allTags)).record(logParams.getCost(), TimeUnit.MILLISECONDS);
+                MonilogMetrics.record(name + MonitorType.RECORD.getMark(), systemTags);
+                Objects.requireNonNull(MonilogMetrics.eventDuration(name + MonitorType.TIMER.getMark(), systemTags)).record(logParams.getCost(), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            systemTags.release();
         }
     }
 
     private static boolean checkDoMonitor() {
-        MoniLogProperties logProperties = getLogProperties();
-        return logProperties != null && logProperties.isEnable() && logProperties.isEnableMonitor();
+        MoniLogRuntimeConfig config = MoniLogRuntimeConfig.get();
+        return config.isEnable() && config.isEnableMonitor();
     }
 
     private static void doRtTooLongMonitor(MoniLogParams logParams) {
-        if (!checkRtMonitor(logParams)) {
-            return;
-        }
-        MoniLogProperties logProperties = getLogProperties();
-        if (logProperties == null || !logProperties.isMonitorLongRt()) {
+        MoniLogRuntimeConfig config = MoniLogRuntimeConfig.get();
+        if (!checkRtMonitor(config, logParams)) {
             return;
         }
-        LogLongRtLevel rtTooLongLevel = logProperties.getPrinter().getLongRtLevel();
-        if (rtTooLongLevel == null || LogLongRtLevel.none == rtTooLongLevel) {
+        LogLongRtLevel rtTooLongLevel = config.getLongRtLevel();
+        if (LogLongRtLevel.none == rtTooLongLevel) {
             return;
         }
-        TagBuilder systemTags = getSystemTags(logParams);
         LogPoint logPoint = logParams.getLogPoint();
-        String[] allTags = systemTags.add(logParams.getTags()).toArray();
-        if ((LogLongRtLevel.both == rtTooLongLevel || LogLongRtLevel.onlyPrometheus == rtTooLongLevel) && logProperties.isEnableMonitor()) {
-            // 操作操作信息
-            String operationCostTooLongMonitorPrefix = METRIC_PREFIX + "rt_too_long_" + logPoint.name();
-            MonilogMetrics.record(operationCostTooLongMonitorPrefix + MonitorType.RECORD.getMark(), allTags);
-            // 耗时只打印基础tag
-            MonilogMetrics.eventDuration(operationCostTooLongMonitorPrefix + MonitorType.TIMER.getMark(), systemTags.toArray()).record(logParams.getCost(), TimeUnit.MILLISECONDS);
+        if ((LogLongRtLevel.both == rtTooLongLevel || LogLongRtLevel.onlyPrometheus == rtTooLongLevel) && config.isEnableMonitor()) {
+            TagBuilder systemTags = getSystemTags(logParams);
+            try {
+                systemTags.add(logParams.getTags());
+                // 操作操作信息
+                String operationCostTooLongMonitorPrefix = METRIC_PREFIX + "rt_too_long_" + logPoint.name();
+                MonilogMetrics.record(operationCostTooLongMonitorPrefix + MonitorType.RECORD.getMark(), systemTags);
+                // 耗时只打印基础tag
+                MonilogMetrics.eventDuration(operationCostTooLongMonitorPrefix + MonitorType.TIMER.getMark(), systemTags).record(logParams.getCost(), TimeUnit.MILLISECONDS);
+            } finally {
+                systemTags.release();
+            }
         }
         if (LogLongRtLevel.both == rtTooLongLevel || LogLongRtLevel.onlyLogger == rtTooLongLevel) {
             printLongRtLog(logParams);
         }
     }
 
-    private static boolean checkRtMonitor(MoniLogParams logParams) {
+    private static boolean checkRtMonitor(MoniLogRuntimeConfig config, MoniLogParams logParams) {
         LogPoint logPoint = logParams.getLogPoint();
-        return logPoint != null && logPoint.exceedLongRtThreshold(getLogProperties(), logParams.getCost());
+        return logPoint != null && config.exceedLongRtThreshold(logPoint, logParams.getCost());
     }
 
     /**
-     * 统一打上环境标、应用名、打标类型、处理结果
+     * 统一打上环境标、应用名、打标类型、处理结果。返回的是线程复用的缓冲区，用完须release
      */
     private static TagBuilder getSystemTags(MoniLogParams logParams) {
         boolean success = logParams.isSuccess() && logParams.getException() == null;
         String exception = logParams.getException() == null ? "null" : ReflectUtil.getSimpleClassName(logParams.getException().getClass());
-        return TagBuilder.of("result", success ? "success" : "error").add("application", SpringUtils.application).add("logPoint", logParams.getLogPoint().name()).add("env", SpringUtils.activeProfile).add("service", logParams.getService()).add("action", logParams.getAction()).add("msgCode", logParams.getMsgCode()).add("exception", exception);
+        return TagBuilder.systemTags(success ? "success" : "error", SpringUtils.application, logParams.getLogPoint().name(), SpringUtils.activeProfile,
+                logParams.getService(), logParams.getAction(), logParams.getMsgCode(), exception);
     }
 
     /**
@@ -212,8 +254,10 @@ class MoniLogUtil {
 
     /**
      * 打印大值日志
+     *
+     * @param valueLen 结果的字节数，由调用方在连接层统计
      */
-    static void printLargeSizeLog(MoniLogParams p, String key) {
+    static void printLargeSizeLog(MoniLogParams p, String key, long valueLen) {
         MoniLogPrinter printer = getLogPrinter();
         if (printer == null) {
             return;
@@ -221,59 +265,44 @@ class MoniLogUtil {
         if (p == null || p.getLogPoint() != LogPoint.redis || p.getOutput() == null || StringUtils.isBlank(key)) {
             return;
         }
+        long threshold = getLargeValueThreshold();
+        if (threshold > 0 && valueLen > threshold) {
+            printer.logLargeSize(p, key, valueLen);
+        }
+    }
+
+    /**
+     * redis大值监控的阈值，单位字节；未开启时返回-1
+     */
+    static long getLargeValueThreshold() {
         MoniLogProperties moniLogProperties = getLogProperties();
         if (moniLogProperties == null) {
-            return;
+            return -1;
         }
         MoniLogProperties.RedisProperties redisConf = moniLogProperties.getRedis();
         if (redisConf == null || !redisConf.isEnable() || redisConf.getWarnForValueLength() <= 0) {
-            return;
-        }
-        long valueLen;
-        try {
-            Object formatted;
-            if (p.getPayload(MoniLogParams.PAYLOAD_FORMATTED_OUTPUT) != null) {
-                formatted = p.getPayload(MoniLogParams.PAYLOAD_FORMATTED_OUTPUT);
-            } else {
-                formatted = printer.formatArg(p.getOutput());
-                p.addPayload(MoniLogParams.PAYLOAD_FORMATTED_OUTPUT, formatted);
-            }
-            valueLen = RamUsageEstimator.sizeOf(formatted == null ? p.getOutput() : formatted);
-        } catch (Exception e) {
-            MoniLogUtil.innerDebug("parseResultSize error", e);
-            return;
-        }
-        if (valueLen > 0 && valueLen > redisConf.getWarnForValueLength() * ONE_KB) {
-            printer.logLargeSize(p, key, valueLen);
+            return -1;
         }
+        return (long) (redisConf.getWarnForValueLength() * ONE_KB);
     }
 
     private static LogOutputLevel getDigestLogLevel() {
-        MoniLogProperties properties = getLogProperties();
-        if (properties == null) {
-            return LogOutputLevel.always;
-        }
-        MoniLogProperties.PrinterProperties printerCfg = properties.getPrinter();
-        if (printerCfg == null) {
-            return LogOutputLevel.always;
-        }
-        LogOutputLevel digestLogLevel = printerCfg.getDigestLogLevel();
-        if (digestLogLevel == null) {
-            return LogOutputLevel.always;
-        }
-        return digestLogLevel;
+        return MoniLogRuntimeConfig.get().getDigestLogLevel();
     }
 
     protected static LogOutputLevel getDetailLogLevel(MoniLogParams logParams) {
+        if (logParams.getPayload(MoniLogParams.PAYLOAD_DETAIL_SKIPPED) != null) {
+            return LogOutputLevel.none;
+        }
         LogPoint logPoint = logParams.getLogPoint();
-        MoniLogProperties properties = getLogProperties();
-        if (properties == null) {
+        MoniLogRuntimeConfig config = MoniLogRuntimeConfig.get();
+        if (!config.isBound()) {
             return LogOutputLevel.none;
         }
-        if (properties.isDebug()) {
+        if (config.isDebug()) {
             return LogOutputLevel.always;
         }
-        return logPoint == null ? LogOutputLevel.none : logPoint.getDetailLogLevel(properties);
+        return logPoint == null ? LogOutputLevel.none : config.getDetailLogLevel(logPoint);
     }
 
     /**
@@ -285,7 +314,7 @@ class MoniLogUtil {
             return;
         }
         boolean doPrinter = printLevelCheckPass(getDigestLogLevel(), logParams);
-        if (doPrinter) {
+        if (doPrinter && MoniLogSampler.tryAcquireDigest(logParams, getSamplingConfig())) {
             printer.logDigest(logParams);
         }
     }
@@ -295,11 +324,14 @@ class MoniLogUtil {
      */
     private static void printDetailLog(MoniLogParams logParams) {
         MoniLogPrinter printer = getLogPrinter();
-        MoniLogProperties properties = getLogProperties();
-        if (printer == null || properties == null) {
+        MoniLogRuntimeConfig config = MoniLogRuntimeConfig.get();
+        if (printer == null || !config.isBound()) {
             return;
         }
-        if (properties.isDebug()) {
+        if (logParams.getPayload(MoniLogParams.PAYLOAD_DETAIL_SKIPPED) != null) {
+            return;
+        }
+        if (config.isDebug()) {
             printer.logDetail(logParams);
             return;
         }
@@ -307,11 +339,24 @@ class MoniLogUtil {
             return;
         }
         boolean doPrinter = printLevelCheckPass(getDetailLogLevel(logParams), logParams);
-        if (doPrinter) {
+        if (doPrinter && MoniLogSampler.tryAcquireDetail(logParams, getSamplingConfig())) {
             printer.logDetail(logParams);
         }
     }
 
+    @Nullable
+    private static MoniLogProperties.SamplingProperties getSamplingConfig() {
+        MoniLogProperties properties = getLogProperties();
+        MoniLogProperties.PrinterProperties printerCfg = properties == null ? null : properties.getPrinter();
+        return printerCfg == null ? null : printerCfg.getSampling();
+    }
+
+    @Nullable
+    static MoniLogProperties.RouteTemplateProperties getRouteTemplateConfig() {
+        MoniLogProperties properties = getLogProperties();
+        return properties == null ? null : properties.getRouteTemplate();
+    }
+
     @Nullable
     private static MoniLogPrinter getLogPrinter() {
         if (logPrinter != null) {
@@ -339,41 +384,8 @@ class MoniLogUtil {
             return true;
         }
 
-        Set<String> excludeComponents = printerCfg.getExcludeComponents();
-        Set<String> excludeServices = printerCfg.getExcludeServices();
-        Set<String> excludeActions = printerCfg.getExcludeActions();
-        Set<String> excludeMsgCodes = printerCfg.getExcludeMsgCodes();
-        Set<String> excludeKeyWords = printerCfg.getExcludeKeyWords();
-        Set<String> exceptions = printerCfg.getExcludeExceptions();
-
-        if (StringUtil.checkPathMatch(excludeComponents, logPoint.name())) {
-            return true;
-        }
-        if (StringUtil.checkPathMatch(excludeServices, logParams.getService())) {
-            return true;
-        }
-        if (StringUtil.checkPathMatch(excludeActions, logParams.getAction())) {
-            return true;
-        }
-        // 错误码匹配msgCode
-        if (StringUtil.checkContainsIgnoreCase(excludeMsgCodes, logParams.getMsgCode())) {
-            return true;
-        }
-        // 关键词匹配msgInfo
-        if (StringUtil.checkListItemContains(excludeKeyWords, logParams.getMsgInfo())) {
-            return true;
-        }
-        // 基于错误的判断
-        Throwable exception = logParams.getException();
-        if (exception == null) {
-            return false;
-        }
-        // 关键词匹配错误
-        if (StringUtil.checkListItemContains(excludeKeyWords, exception.getMessage())) {
-            return true;
-        }
-        // 匹配错误类
-        return StringUtil.checkListItemContains(exceptions, exception.getClass().getCanonicalName());
+        // 排除规则预编译为索引，配置变更后自动重建
+        return PrintExcludeMatcher.of(printerCfg).exclude(logPoint, logParams);
     }
 
     protected static boolean printLevelCheckPass(LogOutputLevel detailLogLevel, MoniLogParams logParams) {
@@ -417,6 +429,18 @@ class MoniLogUtil {
         return traceId;
     }
 
+    /**
+     * 当前trace的采样决策，没有有效的trace上下文时返回null
+     */
+    static Boolean isTraceSampled() {
+        try {
+            SpanContext ctx = Span.current().getSpanContext();
+            return ctx.isValid() ? ctx.isSampled() : null;
+        } catch (Throwable ignore) {
+            return null;
+        }
+    }
+
     public static String getSpanId() {
         String spanId = null;
         try {
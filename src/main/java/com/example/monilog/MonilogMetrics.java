@@ -1,15 +1,22 @@
 package com.example.monilog;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
 import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.noop.NoopTimer;
 import lombok.extern.slf4j.Slf4j;
-import org.jetbrains.annotations.NotNull;
 
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToDoubleFunction;
 
 /**
  * @author yp
@@ -18,27 +25,53 @@ import java.util.function.Consumer;
 @Slf4j
 class MonilogMetrics {
     public static final String METRIC_PREFIX = "monilog_";
+    /**
+     * monilog最多注册的指标数量，超过后不再注册新的指标，防止tag组合失控导致内存溢出
+     */
+    private static final int MAX_METERS = 10000;
 
-    private static final MoniLogMetricsConsumer METRICS_CONSUMER = new MoniLogMetricsConsumer();
+    private static final CompositeMeterRegistry MONILOG_REGISTRY = Metrics.globalRegistry;
 
+    private static final MeterCache METER_CACHE = new MeterCache(MAX_METERS);
 
-    private static final CompositeMeterRegistry MONILOG_REGISTRY = getMetricsRegistry();;
+    /**
+     * 超过指标数量上限后返回的空实现，避免调用方判空
+     */
+    private static final Timer NOOP_TIMER = new NoopTimer(new Meter.Id(METRIC_PREFIX + "noop", Tags.empty(), null, null, Meter.Type.TIMER));
 
 
-    private static CompositeMeterRegistry getMetricsRegistry() {
-        CompositeMeterRegistry registry = Metrics.globalRegistry;
-        registry.config().onMeterAdded(METRICS_CONSUMER);
-        return registry;
+    static void record(String metricName, String... tags) {
+        record(metricName, tags, tags == null ? 0 : tags.length);
     }
 
+    /**
+     * 直接使用TagBuilder的内部缓冲区查找指标，命中缓存时不产生tag数组拷贝
+     */
+    static void record(String metricName, TagBuilder tags) {
+        record(metricName, tags.buffer(), tags.size());
+    }
 
-    static void record(String metricName, String... tags) {
+    private static void record(String metricName, String[] tags, int len) {
         try {
-            if (METRICS_CONSUMER.isCounterExceededThreshold()) {
-                log.warn("too many metrics.current size:{}",METRICS_CONSUMER.getCurrentCounterValue());
-                return;
+            Counter counter = METER_CACHE.get(MeterType.COUNTER, metricName, tags, len);
+            if (counter != null) {
+                counter.increment();
+            }
+        } catch (Exception e) {
+            log.warn(e.getMessage());
+        }
+    }
+
+
+    /**
+     * 计数器按指定数量累加
+     */
+    static void count(String metricName, double amount, String... tags) {
+        try {
+            Counter counter = METER_CACHE.get(MeterType.COUNTER, metricName, tags);
+            if (counter != null) {
+                counter.increment(amount);
             }
-            MONILOG_REGISTRY.counter(metricName, tags).increment();
         } catch (Exception e) {
             log.warn(e.getMessage());
         }
@@ -46,55 +79,191 @@ class MonilogMetrics {
 
 
     static Timer eventDuration(String metricName, String... tags) {
+        return eventDuration(metricName, tags, tags == null ? 0 : tags.length);
+    }
+
+    static Timer eventDuration(String metricName, TagBuilder tags) {
+        return eventDuration(metricName, tags.buffer(), tags.size());
+    }
+
+    private static Timer eventDuration(String metricName, String[] tags, int len) {
         try {
-            return Timer.builder(metricName).tags(tags).publishPercentiles(new double[]{0.75, 0.95, 0.99, 1.0}).register(MONILOG_REGISTRY);
+            Timer timer = METER_CACHE.get(MeterType.TIMER, metricName, tags, len);
+            return timer == null ? NOOP_TIMER : timer;
         } catch (Exception e) {
             log.warn(e.getMessage());
             return null;
         }
     }
 
-    static class MoniLogMetricsConsumer implements Consumer<Meter> {
-        private final AtomicInteger METERS_COUNTER = new AtomicInteger();
+    static void summary(String metricName, double amount, String... tags) {
+        try {
+            DistributionSummary summary = METER_CACHE.get(MeterType.SUMMARY, metricName, tags);
+            if (summary != null) {
+                summary.record(amount);
+            }
+        } catch (Exception e) {
+            log.warn(e.getMessage());
+        }
+    }
 
-        private final Map<Meter.Id, Meter> idMeterMap;
+    static <T> void gauge(String metricName, T obj, ToDoubleFunction<T> f, String... tags) {
+        try {
+            Gauge.builder(metricName, obj, f).tags(tags).register(MONILOG_REGISTRY);
+        } catch (Exception e) {
+            log.warn(e.getMessage());
+        }
+    }
+
+    enum MeterType {
+        COUNTER {
+            @Override
+            Meter register(String name, String[] tags) {
+                return MONILOG_REGISTRY.counter(name, tags);
+            }
+        },
+        TIMER {
+            @Override
+            Meter register(String name, String[] tags) {
+                return Timer.builder(name).tags(tags).publishPercentiles(0.75, 0.95, 0.99, 1.0).register(MONILOG_REGISTRY);
+            }
+        },
+        SUMMARY {
+            @Override
+            Meter register(String name, String[] tags) {
+                return DistributionSummary.builder(name).tags(tags).publishPercentiles(0.75, 0.95, 0.99, 1.0).register(MONILOG_REGISTRY);
+            }
+        };
+
+        abstract Meter register(String name, String[] tags);
+    }
+
+    /**
+     * 已注册指标的句柄缓存：按(指标类型,名称,tag序列)的指纹分片存放，命中时无锁且不产生任何对象分配；
+     * 未命中时才在分片锁内向registry注册，注册总数受上限约束
+     */
+    static final class MeterCache {
+        private static final int SHARD_BITS = 4;
+        private static final int BUCKET_BITS = 10;
+        private static final long WARN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+        private static final String[] EMPTY_TAGS = new String[0];
+
+        private final int maxMeters;
+        private final Shard[] shards = new Shard[1 << SHARD_BITS];
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicLong lastWarnTime = new AtomicLong();
+
+        MeterCache(int maxMeters) {
+            this.maxMeters = maxMeters;
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new Shard();
+            }
+        }
 
-        public MoniLogMetricsConsumer(){
-            CompositeMeterRegistry registry = Metrics.globalRegistry;
-            idMeterMap = ReflectUtil.getPropValue(registry, "meterMap", true);
+        <M extends Meter> M get(MeterType type, String name, String[] tags) {
+            return get(type, name, tags, tags == null ? 0 : tags.length);
         }
 
-        @Override
-        public void accept(Meter meter) {
-            if (!meter.getId().getName().startsWith(METRIC_PREFIX)) {
-                return;
+        /**
+         * @param tags tag序列，仅前len个元素有效
+         */
+        @SuppressWarnings("unchecked")
+        <M extends Meter> M get(MeterType type, String name, String[] tags, int len) {
+            String[] safeTags = tags == null ? EMPTY_TAGS : tags;
+            int safeLen = Math.min(len, safeTags.length);
+            int hash = hash(type, name, safeTags, safeLen);
+            Shard shard = shards[hash & (shards.length - 1)];
+            int bucket = (hash >>> SHARD_BITS) & ((1 << BUCKET_BITS) - 1);
+            Entry e = find(shard.buckets.get(bucket), hash, type, name, safeTags, safeLen);
+            if (e != null) {
+                return (M) e.meter;
             }
-            if (idMeterMap.get(meter.getId()) == null) {
-                incrementCounter();
+            synchronized (shard) {
+                Entry head = shard.buckets.get(bucket);
+                e = find(head, hash, type, name, safeTags, safeLen);
+                if (e != null) {
+                    return (M) e.meter;
+                }
+                if (size.get() >= maxMeters) {
+                    warnExceeded();
+                    return null;
+                }
+                //tags可能是调用方复用的数组，必须复制一份作为key
+                String[] keyTags = Arrays.copyOf(safeTags, safeLen);
+                Meter meter = type.register(name, keyTags);
+                shard.buckets.set(bucket, new Entry(hash, type, name, keyTags, meter, head));
+                size.incrementAndGet();
+                return (M) meter;
             }
         }
 
+        int size() {
+            return size.get();
+        }
 
+        private static Entry find(Entry e, int hash, MeterType type, String name, String[] tags, int len) {
+            for (; e != null; e = e.next) {
+                if (e.hash == hash && e.type == type && e.name.equals(name) && tagsEquals(e.tags, tags, len)) {
+                    return e;
+                }
+            }
+            return null;
+        }
 
-        @NotNull
-        @Override
-        public Consumer<Meter> andThen(@NotNull Consumer<? super Meter> after) {
-            return Consumer.super.andThen(after);
+        private static boolean tagsEquals(String[] a, String[] b, int len) {
+            if (a.length != len) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                String x = a[i];
+                String y = b[i];
+                if (x == y) {
+                    continue;
+                }
+                if (x == null || !x.equals(y)) {
+                    return false;
+                }
+            }
+            return true;
         }
 
-        public int getCurrentCounterValue() {
-            return METERS_COUNTER.get();
+        private static int hash(MeterType type, String name, String[] tags, int len) {
+            int h = 31 * type.ordinal() + name.hashCode();
+            for (int i = 0; i < len; i++) {
+                String tag = tags[i];
+                h = 31 * h + (tag == null ? 0 : tag.hashCode());
+            }
+            return h ^ (h >>> 16);
         }
 
-        public boolean isCounterExceededThreshold() {
-            int threshold = 10000;
-            return getCurrentCounterValue() > threshold;
+        private void warnExceeded() {
+            long now = System.currentTimeMillis();
+            long last = lastWarnTime.get();
+            if (now - last > WARN_INTERVAL_MILLIS && lastWarnTime.compareAndSet(last, now)) {
+                log.warn("too many metrics.current size:{}", size.get());
+            }
         }
 
-        private void incrementCounter() {
-            METERS_COUNTER.incrementAndGet();
+        private static final class Shard {
+            private final AtomicReferenceArray<Entry> buckets = new AtomicReferenceArray<>(1 << BUCKET_BITS);
         }
 
-    }
+        private static final class Entry {
+            private final int hash;
+            private final MeterType type;
+            private final String name;
+            private final String[] tags;
+            private final Meter meter;
+            private final Entry next;
 
+            Entry(int hash, MeterType type, String name, String[] tags, Meter meter, Entry next) {
+                this.hash = hash;
+                this.type = type;
+                this.name = name;
+                this.tags = tags;
+                this.meter = meter;
+                this.next = next;
+            }
+        }
+    }
 }
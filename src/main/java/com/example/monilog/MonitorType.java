@@ -23,7 +23,12 @@ enum MonitorType {
     /**
      * 耗时
      */
-    TIMER(21, "_timer", "耗时");
+    TIMER(21, "_timer", "耗时"),
+
+    /**
+     * 分布
+     */
+    SUMMARY(31, "_summary", "分布");
 
     private final int code;
 
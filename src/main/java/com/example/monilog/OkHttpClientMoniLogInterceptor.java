@@ -77,9 +77,10 @@ public final class OkHttpClientMoniLogInterceptor implements Interceptor {
                 if (response != null) {
                     // 先塞调用的结果
                     p.setMsgCode(String.valueOf(response.code()));
-                    String responseBody = getOutputBody(response.body());
-                    JSON jsonBody = StringUtil.tryConvert2Json(responseBody);
-                    p.setOutput(jsonBody == null ? responseBody : jsonBody);
+                    byte[] responseBody = getOutputBody(response.body());
+                    // 响应体延迟到日志输出时才解码，结果解析只提取解析表达式用到的字段
+                    p.setOutput(responseBody == null ? null : LazyLogArg.of(() -> formatOutputBody(responseBody)));
+                    JSON jsonBody = ResultParseUtil.extractResult(responseBody, responseBody == null ? 0 : responseBody.length, true, StandardCharsets.UTF_8, null, httpClientProperties.getDefaultBoolExpr(), null, null);
                     ParsedResult pr = ResultParseUtil.parseResult(jsonBody, null, null, httpClientProperties.getDefaultBoolExpr(), null, null);
                     if (pr != null) {
                         p.setSuccess(p.isSuccess() && pr.isSuccess());
@@ -187,20 +188,29 @@ public final class OkHttpClientMoniLogInterceptor implements Interceptor {
             return null;
         }
     }
-    private static String getOutputBody(ResponseBody responseBody) {
+    private static byte[] getOutputBody(ResponseBody responseBody) {
         if (responseBody == null) {
             return null;
         }
-        String responseBodyString = null;
+        byte[] bytes = null;
         try {
             BufferedSource source = responseBody.source();
             source.request(Long.MAX_VALUE); // request the entire body.
             Buffer buffer = source.getBuffer();
-            responseBodyString = buffer.clone().readString(StandardCharsets.UTF_8);
+            bytes = buffer.clone().readByteArray();
         } catch (IOException e) {
             MoniLogUtil.innerDebug("OkHttpClientMoniLogInterceptor.getOutputBody error", e);
         }
-        return responseBodyString;
+        return bytes;
+    }
+
+    /**
+     * 用于日志输出的响应体，json响应输出解析后的对象
+     */
+    private static Object formatOutputBody(byte[] responseBody) {
+        String responseBodyString = new String(responseBody, StandardCharsets.UTF_8);
+        JSON jsonBody = StringUtil.tryConvert2Json(responseBodyString);
+        return jsonBody == null ? responseBodyString : jsonBody;
     }
 
 }
@@ -0,0 +1,335 @@
+package com.example.monilog;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 日志打印排除规则的预编译索引，由PrinterProperties生成，配置变更(含Apollo推送)后重建：
+ * 组件/服务/方法名按精确匹配集合+ant通配模式的字面前缀树匹配，关键词与异常类名使用Aho–Corasick自动机做子串匹配，
+ * 并按(logPoint, service, action)缓存前三项的判定结果。匹配语义与逐条规则判断保持一致
+ *
+ * @author yp
+ * @date 2024/03/29
+ */
+final class PrintExcludeMatcher {
+    /**
+     * 判定结果缓存的最大条目数，超过后不再缓存
+     */
+    private static final int MAX_CACHED_DECISIONS = 10000;
+    private static final int MAX_CACHED_EXCEPTIONS = 1024;
+    private static final AntPathMatcher ANT_PATH_MATCHER = new AntPathMatcher();
+    private static volatile PrintExcludeMatcher current;
+
+    /**
+     * 生成索引时的配置对象及各排除清单，任一引用变化(配置重新绑定或调用setter)即重建索引
+     */
+    private final MoniLogProperties.PrinterProperties source;
+    private final Object[] sourceRules;
+    private final PathRules components;
+    private final PathRules services;
+    private final PathRules actions;
+    private final Set<String> msgCodes;
+    private final KeywordAutomaton keyWords;
+    private final KeywordAutomaton exceptions;
+    private final Map<LogPoint, ConcurrentHashMap<String, ConcurrentHashMap<String, Boolean>>> decisions = new EnumMap<>(LogPoint.class);
+    private final ConcurrentHashMap<Class<?>, Boolean> exceptionDecisions = new ConcurrentHashMap<>();
+    private final AtomicInteger cachedDecisions = new AtomicInteger();
+
+    private PrintExcludeMatcher(MoniLogProperties.PrinterProperties cfg) {
+        this.source = cfg;
+        this.sourceRules = rulesOf(cfg);
+        this.components = new PathRules(cfg.getExcludeComponents());
+        this.services = new PathRules(cfg.getExcludeServices());
+        this.actions = new PathRules(cfg.getExcludeActions());
+        this.msgCodes = new HashSet<>();
+        if (cfg.getExcludeMsgCodes() != null) {
+            for (String code : cfg.getExcludeMsgCodes()) {
+                if (code != null) {
+                    msgCodes.add(code.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        this.keyWords = new KeywordAutomaton(cfg.getExcludeKeyWords());
+        this.exceptions = new KeywordAutomaton(cfg.getExcludeExceptions());
+        for (LogPoint logPoint : LogPoint.values()) {
+            decisions.put(logPoint, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * 获取配置对应的索引，配置对象变化时重建
+     */
+    static PrintExcludeMatcher of(MoniLogProperties.PrinterProperties cfg) {
+        PrintExcludeMatcher matcher = current;
+        if (matcher != null && matcher.isBuiltFrom(cfg)) {
+            return matcher;
+        }
+        matcher = new PrintExcludeMatcher(cfg);
+        current = matcher;
+        return matcher;
+    }
+
+    private boolean isBuiltFrom(MoniLogProperties.PrinterProperties cfg) {
+        if (source != cfg) {
+            return false;
+        }
+        // 逐个比较引用，避免热路径上分配数组
+        return sourceRules[0] == cfg.getExcludeComponents() && sourceRules[1] == cfg.getExcludeServices()
+                && sourceRules[2] == cfg.getExcludeActions() && sourceRules[3] == cfg.getExcludeMsgCodes()
+                && sourceRules[4] == cfg.getExcludeKeyWords() && sourceRules[5] == cfg.getExcludeExceptions();
+    }
+
+    private static Object[] rulesOf(MoniLogProperties.PrinterProperties cfg) {
+        return new Object[]{cfg.getExcludeComponents(), cfg.getExcludeServices(), cfg.getExcludeActions(),
+                cfg.getExcludeMsgCodes(), cfg.getExcludeKeyWords(), cfg.getExcludeExceptions()};
+    }
+
+    /**
+     * 校验是否在排除清单中,若返回true，则不需要打印摘要日志与详情日志
+     */
+    boolean exclude(LogPoint logPoint, MoniLogParams logParams) {
+        if (excludeByOperation(logPoint, logParams.getService(), logParams.getAction())) {
+            return true;
+        }
+        // 错误码匹配msgCode
+        String msgCode = logParams.getMsgCode();
+        if (!msgCodes.isEmpty() && StringUtils.isNotBlank(msgCode) && msgCodes.contains(msgCode.toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        // 关键词匹配msgInfo
+        if (keyWords.matches(logParams.getMsgInfo())) {
+            return true;
+        }
+        // 基于错误的判断
+        Throwable exception = logParams.getException();
+        if (exception == null) {
+            return false;
+        }
+        // 关键词匹配错误
+        if (keyWords.matches(exception.getMessage())) {
+            return true;
+        }
+        // 匹配错误类
+        return excludeByException(exception.getClass());
+    }
+
+    private boolean excludeByOperation(LogPoint logPoint, String service, String action) {
+        ConcurrentHashMap<String, ConcurrentHashMap<String, Boolean>> byService = decisions.get(logPoint);
+        String serviceKey = service == null ? "" : service;
+        String actionKey = action == null ? "" : action;
+        ConcurrentHashMap<String, Boolean> byAction = byService.get(serviceKey);
+        Boolean decision = byAction == null ? null : byAction.get(actionKey);
+        if (decision != null) {
+            return decision;
+        }
+        decision = components.matches(logPoint.name()) || services.matches(service) || actions.matches(action);
+        if (cachedDecisions.get() < MAX_CACHED_DECISIONS) {
+            if (byAction == null) {
+                byAction = byService.computeIfAbsent(serviceKey, k -> new ConcurrentHashMap<>());
+            }
+            if (byAction.putIfAbsent(actionKey, decision) == null) {
+                cachedDecisions.incrementAndGet();
+            }
+        }
+        return decision;
+    }
+
+    private boolean excludeByException(Class<?> cls) {
+        if (exceptions.isEmpty()) {
+            return false;
+        }
+        Boolean decision = exceptionDecisions.get(cls);
+        if (decision != null) {
+            return decision;
+        }
+        decision = exceptions.matches(cls.getCanonicalName());
+        if (exceptionDecisions.size() < MAX_CACHED_EXCEPTIONS) {
+            exceptionDecisions.put(cls, decision);
+        }
+        return decision;
+    }
+
+    /**
+     * ant风格的匹配规则：不含通配符的规则放入精确匹配集合，其余规则按通配符前的字面前缀建立前缀树，
+     * 只有前缀命中的规则才需要调用AntPathMatcher
+     */
+    private static final class PathRules {
+        private final Set<String> exact = new HashSet<>();
+        private final PrefixNode root = new PrefixNode();
+        private boolean hasPatterns;
+
+        PathRules(Collection<String> patterns) {
+            if (patterns == null) {
+                return;
+            }
+            for (String pattern : patterns) {
+                if (pattern == null) {
+                    continue;
+                }
+                if (StringUtils.containsAny(pattern, '*', '?', '{', '/')) {
+                    root.add(pattern, literalPrefixLength(pattern));
+                    hasPatterns = true;
+                } else {
+                    exact.add(pattern);
+                }
+            }
+        }
+
+        boolean matches(String toCheck) {
+            if (StringUtils.isBlank(toCheck)) {
+                return false;
+            }
+            if (exact.contains(toCheck)) {
+                return true;
+            }
+            if (!hasPatterns) {
+                return false;
+            }
+            PrefixNode node = root;
+            int i = 0;
+            while (node != null) {
+                for (String pattern : node.patterns) {
+                    if (ANT_PATH_MATCHER.match(pattern, toCheck)) {
+                        return true;
+                    }
+                }
+                if (i >= toCheck.length()) {
+                    break;
+                }
+                node = node.children.get(toCheck.charAt(i++));
+            }
+            return false;
+        }
+
+        /**
+         * 通配符之前的字面前缀长度；规则中的"/"会被AntPathMatcher按分隔符处理，因此也视为前缀的结束
+         */
+        private static int literalPrefixLength(String pattern) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '*' || c == '?' || c == '{' || c == '/') {
+                    return i;
+                }
+            }
+            return pattern.length();
+        }
+    }
+
+    private static final class PrefixNode {
+        private final Map<Character, PrefixNode> children = new HashMap<>();
+        private final List<String> patterns = new ArrayList<>(1);
+
+        void add(String pattern, int prefixLen) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefixLen; i++) {
+                node = node.children.computeIfAbsent(pattern.charAt(i), k -> new PrefixNode());
+            }
+            node.patterns.add(pattern);
+        }
+    }
+
+    /**
+     * 多关键词子串匹配(Aho–Corasick)，等价于逐个关键词调用String.contains
+     */
+    private static final class KeywordAutomaton {
+        private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+        private final List<Integer> failures = new ArrayList<>();
+        private final List<Boolean> outputs = new ArrayList<>();
+        private boolean empty = true;
+        /**
+         * 存在空串关键词时，任意非空文本都匹配
+         */
+        private boolean matchAll;
+
+        KeywordAutomaton(Collection<String> keywords) {
+            newState();
+            if (keywords == null) {
+                return;
+            }
+            for (String keyword : keywords) {
+                if (keyword == null) {
+                    continue;
+                }
+                empty = false;
+                if (keyword.isEmpty()) {
+                    matchAll = true;
+                    continue;
+                }
+                int state = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    char c = keyword.charAt(i);
+                    Integer next = transitions.get(state).get(c);
+                    if (next == null) {
+                        next = newState();
+                        transitions.get(state).put(c, next);
+                    }
+                    state = next;
+                }
+                outputs.set(state, true);
+            }
+            buildFailures();
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        boolean matches(String text) {
+            if (empty || StringUtils.isBlank(text)) {
+                return false;
+            }
+            if (matchAll) {
+                return true;
+            }
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                Integer next;
+                while ((next = transitions.get(state).get(c)) == null && state != 0) {
+                    state = failures.get(state);
+                }
+                state = next == null ? 0 : next;
+                if (outputs.get(state)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int newState() {
+            transitions.add(new HashMap<>(4));
+            failures.add(0);
+            outputs.add(false);
+            return transitions.size() - 1;
+        }
+
+        private void buildFailures() {
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (Integer child : transitions.get(0).values()) {
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                for (Map.Entry<Character, Integer> e : transitions.get(state).entrySet()) {
+                    char c = e.getKey();
+                    int child = e.getValue();
+                    int f = failures.get(state);
+                    Integer next;
+                    while ((next = transitions.get(f).get(c)) == null && f != 0) {
+                        f = failures.get(f);
+                    }
+                    int failure = next == null ? 0 : next;
+                    failures.set(child, failure);
+                    if (outputs.get(failure)) {
+                        outputs.set(child, true);
+                    }
+                    queue.add(child);
+                }
+            }
+        }
+    }
+}
@@ -9,7 +9,7 @@ import com.github.houbb.word.checker.support.data.english.EnglishWordDatas;
 import com.github.houbb.word.checker.support.format.impl.WordFormats;
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.*;
+import java.util.Map;
 
 /**
  * @author yp
@@ -17,7 +17,12 @@ import java.util.*;
  */
 class RandomStringDetector {
     static final int MIN_RANDOM_STR_LEN = 8;
-    private static Map<String, Double> BIGRAMS_MAP;
+    private static final int ALPHABET = 26;
+    private static final double NORMAL_FREQ = 100.0d;
+    /**
+     * 双字母频率矩阵，类加载时由ENGLISH频率表生成
+     */
+    private static final double[] BIGRAMS = buildBigrams();
     private static Object CHECKER_CTX;
 
     private static final double COMMON_BIGRAMS_THRESHOLD = 0.1d;
@@ -32,7 +37,7 @@ class RandomStringDetector {
     }
 
     static double calcAvgNormalFrequence(String word) {
-        double normalFreqThreshold = 100.0d;
+        double normalFreqThreshold = NORMAL_FREQ;
         if (StringUtils.isBlank(word) || word.length() < MIN_RANDOM_STR_LEN) {
             return normalFreqThreshold;
         }
@@ -52,35 +57,40 @@ class RandomStringDetector {
                 return normalFreqThreshold;
             }
         }
-        Set<Character> charSet = new HashSet<>(word.length());
-        List<String> doubleChars = new ArrayList<>();
-        word = word.toLowerCase();
-        for (int i = 0; i < word.length(); i++) {
-            char c = word.charAt(i);
-            charSet.add(c);
-            if (!Character.isLetter(c)) {
-                continue;
+        return bigramScore(word, 0, word.length());
+    }
+
+    /**
+     * 单次遍历计算[from, to)区间内相邻字母对的平均频率，不分配对象；所有字符(忽略大小写)相同时返回0，没有相邻字母对时返回NaN
+     */
+    private static double bigramScore(String word, int from, int to) {
+        char first = Character.toLowerCase(word.charAt(from));
+        boolean sameChars = true;
+        int pairs = 0;
+        double sumFreq = 0;
+        char prev = first;
+        boolean prevLetter = Character.isLetter(first);
+        for (int i = from + 1; i < to; i++) {
+            char c = Character.toLowerCase(word.charAt(i));
+            boolean letter = Character.isLetter(c);
+            if (c != first) {
+                sameChars = false;
             }
-            if (i < word.length() - 1 && Character.isLetter(word.charAt(i + 1))) {
-                doubleChars.add(word.substring(i, i + 2));
+            if (prevLetter && letter) {
+                pairs++;
+                //连续字母出现的频率，非英文字母的组合频率记为0
+                if (prev >= 'a' && prev <= 'z' && c >= 'a' && c <= 'z') {
+                    sumFreq += BIGRAMS[(prev - 'a') * ALPHABET + (c - 'a')];
+                }
             }
+            prev = c;
+            prevLetter = letter;
         }
-        int charCount = charSet.size();
-        if (charCount == 1) {
+        if (sameChars) {
             return 0.0d;
         }
-        double sumFreq = 0;
-        Map<String, Double> freqMap = initFreqMap();
-        for (String seq : doubleChars) {
-            //连续字母出现的频率
-            Double v = freqMap.get(seq);
-            if (v == null) {
-                continue;
-            }
-            sumFreq += v;
-        }
         //该字符串的平均正常率
-        return sumFreq / doubleChars.size();
+        return sumFreq / pairs;
     }
 
     /**
@@ -115,12 +125,25 @@ class RandomStringDetector {
         return dp[str1.length()][str2.length()];
     }
 
-    private static Map<String, Double> initFreqMap() {
-        if (BIGRAMS_MAP == null) {
-            BIGRAMS_MAP = JSON.parseObject(ENGLISH, new TypeReference<Map<String, Double>>() {
-            });
+    /**
+     * 将双字母频率表展开为26x26的矩阵，下标为(首字母-'a')*26+(次字母-'a')
+     */
+    private static double[] buildBigrams() {
+        double[] bigrams = new double[ALPHABET * ALPHABET];
+        Map<String, Double> freqMap = JSON.parseObject(ENGLISH, new TypeReference<Map<String, Double>>() {
+        });
+        for (Map.Entry<String, Double> entry : freqMap.entrySet()) {
+            String key = entry.getKey();
+            if (key.length() != 2 || entry.getValue() == null) {
+                continue;
+            }
+            char c1 = key.charAt(0);
+            char c2 = key.charAt(1);
+            if (c1 >= 'a' && c1 <= 'z' && c2 >= 'a' && c2 <= 'z') {
+                bigrams[(c1 - 'a') * ALPHABET + (c2 - 'a')] = entry.getValue();
+            }
         }
-        return BIGRAMS_MAP;
+        return bigrams;
     }
 
     private static Object getCheckerContextInstance() {
@@ -0,0 +1,170 @@
+package com.example.monilog;
+
+import javassist.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.ClassUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 为redis连接生成委托包装类：每个连接类只生成一次，包装类实现连接类的全部公共接口，每个方法直接调用被包装连接的同名方法并在方法内记录监控，
+ * 包装一个连接只需一次构造器调用，执行命令时不再经过ProxyFactory、MethodInvocation与反射。
+ * 生成包装类需要数秒，在后台线程中完成，生成完成前调用方使用代理
+ *
+ * @author yp
+ * @date 2024/04/09
+ */
+@Slf4j
+final class RedisConnectionWrappers {
+    private static final String INTERCEPTOR_CLS = RedisMoniLogInterceptor.RedisConnectionFactoryInterceptor.class.getName();
+    private static final String WRAPPER_CLS_PREFIX = RedisConnectionWrappers.class.getName() + "$Wrapper";
+    private static final MethodType CTOR_TYPE = MethodType.methodType(Object.class, Object.class);
+    /**
+     * 生成失败的连接类，之后不再尝试
+     */
+    private static final MethodHandle FAILED = MethodHandles.constant(Object.class, null);
+    /**
+     * 正在后台生成的连接类
+     */
+    private static final MethodHandle PENDING = MethodHandles.constant(Object.class, null);
+    private static final Map<Class<?>, MethodHandle> CONSTRUCTORS = new ConcurrentHashMap<>(8);
+    private static final AtomicInteger SEQ = new AtomicInteger();
+    private static final ExecutorService GENERATOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "monilog-redis-wrapper-generator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private RedisConnectionWrappers() {
+    }
+
+    /**
+     * 包装redis连接
+     *
+     * @param skipMethods 不记录监控、仅做委托的方法
+     * @return 包装后的连接；包装类尚未生成完成或无法为该连接类生成包装类时返回null
+     */
+    static <T> T wrap(T conn, Class<T> type, Set<String> skipMethods) {
+        if (conn == null || conn instanceof Wrapped) {
+            return conn;
+        }
+        Class<?> connCls = conn.getClass();
+        MethodHandle ctor = CONSTRUCTORS.get(connCls);
+        if (ctor == null) {
+            if (CONSTRUCTORS.putIfAbsent(connCls, PENDING) == null) {
+                submit(connCls, skipMethods);
+            }
+            return null;
+        }
+        if (ctor == PENDING || ctor == FAILED) {
+            return null;
+        }
+        try {
+            Object wrapper = (Object) ctor.invokeExact((Object) conn);
+            return type.isInstance(wrapper) ? type.cast(wrapper) : null;
+        } catch (Throwable e) {
+            MoniLogUtil.innerDebug("wrap redis connection error", e);
+            return null;
+        }
+    }
+
+    private static void submit(Class<?> connCls, Set<String> skipMethods) {
+        try {
+            GENERATOR.execute(() -> CONSTRUCTORS.put(connCls, generate(connCls, skipMethods)));
+        } catch (Throwable e) {
+            MoniLogUtil.innerDebug("submit redis connection wrapper generation for {} failed, use proxy instead", connCls.getName(), e);
+            CONSTRUCTORS.put(connCls, FAILED);
+        }
+    }
+
+    /**
+     * 只在生成线程中执行
+     */
+    private static MethodHandle generate(Class<?> connCls, Set<String> skipMethods) {
+        try {
+            List<Class<?>> interfaces = getVisibleInterfaces(connCls);
+            if (interfaces.isEmpty()) {
+                return FAILED;
+            }
+            ClassPool pool = new ClassPool(true);
+            pool.appendClassPath(new LoaderClassPath(RedisConnectionWrappers.class.getClassLoader()));
+            pool.appendClassPath(new LoaderClassPath(connCls.getClassLoader()));
+            CtClass ctCls = pool.makeClass(WRAPPER_CLS_PREFIX + SEQ.incrementAndGet() + "_" + connCls.getSimpleName());
+            ctCls.addInterface(pool.get(Wrapped.class.getName()));
+            for (Class<?> iface : interfaces) {
+                ctCls.addInterface(pool.get(iface.getName()));
+            }
+            ctCls.addField(CtField.make("private final Object target;", ctCls));
+            ctCls.addConstructor(CtNewConstructor.make(new CtClass[]{pool.get(Object.class.getName())}, null, "{this.target = $1;}", ctCls));
+            Set<String> signatures = new HashSet<>();
+            for (Class<?> iface : interfaces) {
+                for (Method m : iface.getMethods()) {
+                    if (Modifier.isStatic(m.getModifiers()) || !signatures.add(m.getName() + MethodType.methodType(m.getReturnType(), m.getParameterTypes()).toMethodDescriptorString())) {
+                        continue;
+                    }
+                    CtClass[] params = new CtClass[m.getParameterCount()];
+                    for (int i = 0; i < params.length; i++) {
+                        params[i] = pool.get(m.getParameterTypes()[i].getTypeName());
+                    }
+                    String body = buildBody(iface, m, skipMethods.contains(m.getName()));
+                    ctCls.addMethod(CtNewMethod.make(Modifier.PUBLIC, pool.get(m.getReturnType().getTypeName()), m.getName(), params, null, body, ctCls));
+                }
+            }
+            ctCls.addMethod(CtNewMethod.make("public String toString() {return this.target.toString();}", ctCls));
+            Class<?> wrapperCls = ctCls.toClass(RedisConnectionWrappers.class);
+            ctCls.detach();
+            log.debug("redis connection wrapper for '{}' has been generated: {}", connCls.getName(), wrapperCls.getName());
+            return MethodHandles.publicLookup().findConstructor(wrapperCls, MethodType.methodType(void.class, Object.class)).asType(CTOR_TYPE);
+        } catch (Throwable e) {
+            MoniLogUtil.innerDebug("generate redis connection wrapper for {} failed, use proxy instead", connCls.getName(), e);
+            return FAILED;
+        }
+    }
+
+    /**
+     * 连接类实现的、从本组件中可见的公共接口
+     */
+    private static List<Class<?>> getVisibleInterfaces(Class<?> connCls) {
+        ClassLoader loader = RedisConnectionWrappers.class.getClassLoader();
+        List<Class<?>> result = new ArrayList<>();
+        for (Class<?> iface : ClassUtils.getAllInterfacesForClassAsSet(connCls)) {
+            if (Modifier.isPublic(iface.getModifiers()) && ClassUtils.isVisible(iface, loader)) {
+                result.add(iface);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 方法体：未开启监控或无需监控的方法直接委托；否则在委托前后记录耗时、结果与异常
+     */
+    private static String buildBody(Class<?> iface, Method m, boolean skip) {
+        boolean isVoid = m.getReturnType() == void.class;
+        // 通过公共接口调用，方法的声明接口可能不可见
+        String call = "((" + iface.getName() + ") this.target)." + m.getName() + "($$)";
+        String direct = isVoid ? call + ";return;" : "return " + call + ";";
+        if (skip) {
+            return "{" + direct + "}";
+        }
+        return "{if (!" + INTERCEPTOR_CLS + ".isEnable()) {" + direct + "}" +
+                "long start = System.currentTimeMillis();Object ret = null;Throwable ex = null;" +
+                "try {" + (isVoid ? call + ";" : "ret = ($w) " + call + ";") + "} catch (Throwable e) {ex = e;throw e;} finally {" +
+                INTERCEPTOR_CLS + ".record(this.target, \"" + m.getName() + "\", $args, ret, ex, start);}" +
+                (isVoid ? "}" : "return ($r) ret;}");
+    }
+
+    /**
+     * 生成的包装类的标记，已包装的连接不再重复包装
+     */
+    interface Wrapped {
+    }
+}
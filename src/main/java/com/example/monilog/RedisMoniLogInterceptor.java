@@ -1,7 +1,6 @@
 package com.example.monilog;
 
 
-import cn.hutool.aop.ProxyUtil;
 import com.google.common.collect.Sets;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -13,20 +12,31 @@ import org.redisson.api.*;
 import org.springframework.data.redis.connection.RedisClusterConnection;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.ClassUtils;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.example.monilog.MonilogMetrics.METRIC_PREFIX;
 
 @Slf4j
 public final class RedisMoniLogInterceptor {
@@ -34,74 +44,109 @@ public final class RedisMoniLogInterceptor {
     private static final Set<String> TARGET_REDISSON_METHODS = Sets.newHashSet("get", "getAndDelete", "readAll", "delete", "isExists", "getAndSet", "getAndExpire", "getAndClearExpire", "put", "putIfAbsent", "putIfExists", "randomEntries", "randomKeys", "addAndGet", "containsKey", "containsValue", "remove", "replace", "putAll", "fastPut", "fastRemove", "fastReplace", "fastPutIfAbsent", "fastPutIfExists", "readAllKeySet", "readAllValues", "readAllEntrySet", "readAllMap", "keySet", "values", "entrySet", "addAfter", "addBefore", "fastSet", "readAll", "range", "random", "removeRandom", "tryAdd", "set", "trySet", "setAndKeepTTL", "setIfAbsent", "setIfExists", "compareAndSet", "tryLock", "lock", "tryLock", "unlock", "forceUnlock", "lockInterruptibly", "expire", "expireAt", "expireIfSet", "expireIfNotSet", "expireIfGreater", "expireIfLess", "clearExpire");
     private static final RedisSerializer<?> stringSerializer = new StringRedisSerializer();
     private static final RedisSerializer<?> jdkSerializer = new JdkSerializationRedisSerializer();
+    /**
+     * 无法为其生成代理类的redisson对象类型
+     */
+    private static final MethodHandle NO_PROXY = MethodHandles.constant(Object.class, null);
+    private static final Map<Class<?>, MethodHandle> REDISSON_PROXY_CONSTRUCTORS = new ConcurrentHashMap<>(16);
+    private static final Map<Method, Boolean> TARGET_REDISSON_METHOD_FLAGS = new ConcurrentHashMap<>(256);
 
     /**
      * RedisConnectionFactory的实现类有LettuceConnectionFactory，LettuceConnectionFactory，对这两增强
      */
     public static class RedisConnectionFactoryInterceptor implements MethodInterceptor {
+        private static final RedisConnectionFactoryInterceptor INSTANCE = new RedisConnectionFactoryInterceptor();
+
         @Override
         public Object invoke(MethodInvocation invocation) throws Throwable {
             if (!ComponentEnum.redis.isEnable()) {
                 return invocation.proceed();
             }
-            Method method = invocation.getMethod();
-            String methodName = method.getName();
+            String methodName = invocation.getMethod().getName();
             if (SKIP_METHODS_FOR_REDIS.contains(methodName)) {
                 return invocation.proceed();
             }
-            Object target = invocation.getThis();
-            String serviceName = ReflectUtil.getSimpleClassName(target.getClass());
-
-            MoniLogParams p = new MoniLogParams();
-            p.setServiceCls(target.getClass());
-            p.setService(serviceName);
-            p.setAction(methodName);
-            p.setSuccess(true);
-            p.setLogPoint(LogPoint.redis);
-            p.setMsgCode(ErrorEnum.SUCCESS.name());
-            p.setMsgInfo(ErrorEnum.SUCCESS.getMsg());
             long start = System.currentTimeMillis();
             Object ret = null;
+            Throwable ex = null;
             try {
                 ret = invocation.proceed();
                 return ret;
             } catch (Throwable e) {
-                p.setException(e);
-                p.setSuccess(false);
-                ErrorInfo errorInfo = ExceptionUtil.parseException(e);
-                p.setMsgCode(errorInfo.getErrorCode());
-                p.setMsgInfo(errorInfo.getErrorMsg());
+                ex = e;
                 throw e;
             } finally {
+                record(invocation.getThis(), methodName, invocation.getArguments(), ret, ex, start);
+            }
+        }
+
+        /**
+         * 记录一次redis命令，由代理及生成的连接包装类在命令执行后调用。访问修饰符、方法名不可修改
+         */
+        public static void record(Object target, String methodName, Object[] args, Object ret, Throwable ex, long start) {
+            MoniLogParams p = new MoniLogParams();
+            try {
+                p.setServiceCls(target.getClass());
+                p.setService(ReflectUtil.getSimpleClassName(target.getClass()));
+                p.setAction(methodName);
+                p.setSuccess(true);
+                p.setLogPoint(LogPoint.redis);
+                p.setMsgCode(ErrorEnum.SUCCESS.name());
+                p.setMsgInfo(ErrorEnum.SUCCESS.getMsg());
+                if (ex != null) {
+                    p.setException(ex);
+                    p.setSuccess(false);
+                    ErrorInfo errorInfo = ExceptionUtil.parseException(ex);
+                    p.setMsgCode(errorInfo.getErrorCode());
+                    p.setMsgInfo(errorInfo.getErrorMsg());
+                }
                 p.setCost(System.currentTimeMillis() - start);
-                JedisInvocation ri = parseRedisInvocation(RedisMethodInfo.fromInvocation(invocation), ret);
+                long responseBytes = recordValueSize(methodName, args, ret);
+                JedisInvocation ri = parseRedisInvocation(new RedisMethodInfo(p.getService(), methodName, args), ret);
                 p.setInput(ri.args);
                 p.setOutput(ri.result);
                 p.setServiceCls(ri.cls);
                 p.setService(ReflectUtil.getSimpleClassName(ri.cls));
                 p.setAction(ri.method);
-                MoniLogUtil.printLargeSizeLog(p, ri.maybeKey);
+                MoniLogUtil.printLargeSizeLog(p, ri.maybeKey, responseBytes);
                 String msgPrefix = "";
                 if (StringUtils.isNotBlank(ri.maybeKey)) {
                     msgPrefix = "[key='" + ri.maybeKey + "']";
                 }
                 p.setMsgInfo(msgPrefix + p.getMsgInfo());
                 MoniLogUtil.log(p);
+            } catch (Throwable e) {
+                MoniLogUtil.innerDebug("redis {}.{} record error", p.getService(), methodName, e);
             }
         }
 
+        /**
+         * 增强代码先调用本方法，关闭时直接返回原始连接。访问修饰符、方法名不可修改
+         */
+        public static boolean isEnable() {
+            return ComponentEnum.redis.isEnable();
+        }
+
         /**
          * 访问修饰符、方法名不可修改
          */
         public static RedisConnection buildProxyForRedisConnection(RedisConnection conn) {
-            return ProxyUtils.tryGetProxy(conn, new RedisConnectionFactoryInterceptor(), RedisConnection.class);
+            if (!isEnable()) {
+                return conn;
+            }
+            RedisConnection wrapped = RedisConnectionWrappers.wrap(conn, RedisConnection.class, SKIP_METHODS_FOR_REDIS);
+            return wrapped != null ? wrapped : ProxyUtils.tryGetProxy(conn, INSTANCE, RedisConnection.class);
         }
 
         /**
          * 访问修饰符、方法名不可修改
          */
         public static RedisClusterConnection buildProxyForRedisClusterConnection(RedisClusterConnection conn) {
-            return ProxyUtils.tryGetProxy(conn, new RedisConnectionFactoryInterceptor(), RedisClusterConnection.class);
+            if (!isEnable()) {
+                return conn;
+            }
+            RedisClusterConnection wrapped = RedisConnectionWrappers.wrap(conn, RedisClusterConnection.class, SKIP_METHODS_FOR_REDIS);
+            return wrapped != null ? wrapped : ProxyUtils.tryGetProxy(conn, INSTANCE, RedisClusterConnection.class);
         }
 
         /**
@@ -183,62 +228,70 @@ public final class RedisMoniLogInterceptor {
         }, RedissonClient.class);
     }
 
-    private static Object getRedissonObjProxy(Object redissonResult, MoniLogParams p, long start) {
-        RedissonResultProxy methodInterceptor = new RedissonResultProxy(p, new AtomicLong(start));
-        Object cglibProxy = ProxyUtils.getProxy(redissonResult, methodInterceptor);
-        if (!(redissonResult instanceof RMap)) {
-            return cglibProxy;
+    private static Object getRedissonObjProxy(Object redissonResult, MoniLogParams p, long start) throws Throwable {
+        MethodHandle ctor = getRedissonProxyConstructor(redissonResult.getClass());
+        if (ctor == NO_PROXY) {
+            return redissonResult;
         }
-        JDKProxyHandlerForRedisson jdkProxyHandler = new JDKProxyHandlerForRedisson(redissonResult, methodInterceptor, cglibProxy);
-        Class<?> firstBoundInterface = ReflectUtil.getFirstBoundInterface(redissonResult.getClass(), RMap.class);
-        return ProxyUtil.newProxyInstance(jdkProxyHandler, firstBoundInterface);
+        return (Object) ctor.invokeExact((InvocationHandler) new RedissonResultHandler(redissonResult, p, start));
     }
 
-    @AllArgsConstructor
-    private static class JDKProxyHandlerForRedisson implements InvocationHandler {
-        private final Object origin;
-        private final RedissonResultProxy methodInterceptor;
-        private final Object cglibProxy;
+    /**
+     * 每个redisson对象类型只生成一次代理类，代理类实现该类型的全部公共接口
+     */
+    private static MethodHandle getRedissonProxyConstructor(Class<?> cls) {
+        MethodHandle ctor = REDISSON_PROXY_CONSTRUCTORS.get(cls);
+        if (ctor != null) {
+            return ctor;
+        }
+        try {
+            Class<?>[] interfaces = Arrays.stream(ClassUtils.getAllInterfacesForClass(cls, cls.getClassLoader()))
+                    .filter(c -> Modifier.isPublic(c.getModifiers())).toArray(Class[]::new);
+            // 通过一次newProxyInstance得到代理类(getProxyClass已过时)，之后直接调用其构造器
+            Object probe = Proxy.newProxyInstance(cls.getClassLoader(), interfaces, (proxy, method, args) -> null);
+            ctor = MethodHandles.publicLookup().findConstructor(probe.getClass(), MethodType.methodType(void.class, InvocationHandler.class))
+                    .asType(MethodType.methodType(Object.class, InvocationHandler.class));
+        } catch (Throwable e) {
+            MoniLogUtil.innerDebug("build redisson proxy class for {} failed, monilog of it will not effect", cls.getName(), e);
+            ctor = NO_PROXY;
+        }
+        MethodHandle existing = REDISSON_PROXY_CONSTRUCTORS.putIfAbsent(cls, ctor);
+        return existing == null ? ctor : existing;
+    }
 
-        @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            Method m = ReflectUtil.getMethodWithoutException(origin, method.getName(), args);
-            if (m != null && !Modifier.isFinal(m.getModifiers())) {
-                return method.invoke(cglibProxy, args);
-            }
-            return methodInterceptor.invoke(ProxyUtils.buildInvocation(origin, method, args));
+    /**
+     * 方法是否需要监控，按Method缓存判断结果
+     */
+    private static boolean isTargetRedissonMethod(Method method) {
+        Boolean flag = TARGET_REDISSON_METHOD_FLAGS.get(method);
+        if (flag == null) {
+            String methodName = method.getName();
+            flag = TARGET_REDISSON_METHODS.contains(methodName)
+                    || methodName.endsWith("Async") && TARGET_REDISSON_METHODS.contains(StringUtils.removeEnd(methodName, "Async"));
+            TARGET_REDISSON_METHOD_FLAGS.put(method, flag);
         }
+        return flag;
     }
 
     @AllArgsConstructor
-    private static class RedissonResultProxy implements MethodInterceptor {
+    private static class RedissonResultHandler implements InvocationHandler {
+        private final Object target;
         private final MoniLogParams params;
-        private final AtomicLong start;
+        private final long start;
 
         @Override
-        public Object invoke(MethodInvocation invocation) throws Throwable {
-            Method method = invocation.getMethod();
-            String methodName = method.getName();
-            if (params == null) {
-                return invocation.proceed();
-            }
-            if (!TARGET_REDISSON_METHODS.contains(methodName)) {
-                if (methodName.endsWith("Async")) {
-                    if (!TARGET_REDISSON_METHODS.contains(StringUtils.removeEnd(methodName, "Async"))) {
-                        return invocation.proceed();
-                    }
-                } else {
-                    return invocation.proceed();
-                }
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (params == null || !isTargetRedissonMethod(method)) {
+                return proceed(method, args);
             }
-
-            AtomicLong startTime = new AtomicLong(this.start.get());
+            String methodName = method.getName();
+            long startTime = this.start;
             MoniLogParams p = params.copy();
             p.removePayload(MoniLogParams.PAYLOAD_FORMATTED_OUTPUT);
             String asyncMethodTag = "().";
             if (p.isOutdated()) {
                 p.setOutdated(false);
-                startTime.set(System.currentTimeMillis());
+                startTime = System.currentTimeMillis();
                 if (p.getAction() != null && p.getAction().contains(asyncMethodTag)) {
                     p.setAction(StringUtils.split(p.getAction(), asyncMethodTag)[0]);
                 }
@@ -252,12 +305,12 @@ public final class RedisMoniLogInterceptor {
             }
             Object ret;
             try {
-                ret = invocation.proceed();
+                ret = proceed(method, args);
                 p.setOutput(ret);
                 return ret;
             } catch (Throwable e) {
                 Throwable ex = e;
-                if (e.getMessage().contains("Unexpected exception while processing command") && e.getCause() != null) {
+                if (StringUtils.contains(e.getMessage(), "Unexpected exception while processing command") && e.getCause() != null) {
                     ex = e.getCause();
                 }
                 p.setException(ex);
@@ -267,9 +320,14 @@ public final class RedisMoniLogInterceptor {
                 p.setMsgInfo(errorInfo.getErrorMsg());
                 throw e;
             } finally {
-                p.setCost(System.currentTimeMillis() - startTime.get());
+                p.setCost(System.currentTimeMillis() - startTime);
                 String maybeKey = chooseStringKey(p.getInput());
-                MoniLogUtil.printLargeSizeLog(p, maybeKey);
+                long threshold = MoniLogUtil.getLargeValueThreshold();
+                // 没有key时不输出大值日志，无需估算
+                if (threshold > 0 && StringUtils.isNotBlank(maybeKey) && p.getOutput() != null) {
+                    //redisson的结果已由codec反序列化，只能估算其大小
+                    MoniLogUtil.printLargeSizeLog(p, maybeKey, estimateSize(p.getOutput(), threshold + 1));
+                }
                 String msgPrefix = "";
                 //与redisTemplate保持一致
                 if (StringUtils.isNotBlank(maybeKey)) {
@@ -280,6 +338,14 @@ public final class RedisMoniLogInterceptor {
                 params.setOutdated(true);
             }
         }
+
+        private Object proceed(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
     }
 
     @Getter
@@ -387,6 +453,104 @@ public final class RedisMoniLogInterceptor {
         return null;
     }
 
+    /**
+     * 按原始字节数统计请求与响应的大小，并上报分布指标
+     *
+     * @return 响应的字节数
+     */
+    private static long recordValueSize(String command, Object[] args, Object ret) {
+        long requestBytes = rawSize(args, 0);
+        long responseBytes = rawSize(ret, 0);
+        try {
+            String name = METRIC_PREFIX + "redis_value_size" + MonitorType.SUMMARY.getMark();
+            if (requestBytes > 0) {
+                MonilogMetrics.summary(name, requestBytes, "application", SpringUtils.application, "command", command, "type", "request");
+            }
+            if (responseBytes > 0) {
+                MonilogMetrics.summary(name, responseBytes, "application", SpringUtils.application, "command", command, "type", "response");
+            }
+        } catch (Exception e) {
+            MoniLogUtil.innerDebug("recordValueSize error", e);
+        }
+        return responseBytes;
+    }
+
+    /**
+     * 连接层的参数与结果均为原始字节(byte[]、byte[]的集合或Map等)，直接累加其长度，不做反射遍历
+     */
+    private static long rawSize(Object o, int depth) {
+        if (o == null) {
+            return 0;
+        }
+        if (o instanceof byte[]) {
+            return ((byte[]) o).length;
+        }
+        if (o instanceof byte[][]) {
+            long size = 0;
+            for (byte[] bytes : (byte[][]) o) {
+                size += bytes == null ? 0 : bytes.length;
+            }
+            return size;
+        }
+        if (o instanceof RedisZSetCommands.Tuple) {
+            return rawSize(((RedisZSetCommands.Tuple) o).getValue(), depth);
+        }
+        if (depth >= 2) {
+            return 0;
+        }
+        long size = 0;
+        if (o instanceof Object[]) {
+            for (Object e : (Object[]) o) {
+                size += rawSize(e, depth + 1);
+            }
+        } else if (o instanceof Collection) {
+            for (Object e : (Collection<?>) o) {
+                size += rawSize(e, depth + 1);
+            }
+        } else if (o instanceof Map) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) o).entrySet()) {
+                size += rawSize(e.getKey(), depth + 1) + rawSize(e.getValue(), depth + 1);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 估算redisson结果的大小，超过limit即停止
+     */
+    private static long estimateSize(Object o, long limit) {
+        if (o == null) {
+            return 0;
+        }
+        if (o instanceof CharSequence) {
+            return ((CharSequence) o).length();
+        }
+        if (o instanceof byte[]) {
+            return ((byte[]) o).length;
+        }
+        if (o instanceof Number || o instanceof Boolean) {
+            return 8;
+        }
+        if (o instanceof Collection || o instanceof Map) {
+            Collection<?> items = o instanceof Map ? ((Map<?, ?>) o).entrySet() : (Collection<?>) o;
+            long size = 0;
+            for (Object item : items) {
+                if (item instanceof Map.Entry) {
+                    size += estimateSize(((Map.Entry<?, ?>) item).getKey(), limit - size);
+                    size += estimateSize(((Map.Entry<?, ?>) item).getValue(), limit - size);
+                } else {
+                    size += estimateSize(item, limit - size);
+                }
+                if (size >= limit) {
+                    break;
+                }
+            }
+            return size;
+        }
+        // 其余对象按JSON长度估算，只计数不生成字符串，超过limit即停止
+        return BoundedJsonWriter.measure(o, (int) Math.min(limit, Integer.MAX_VALUE), 0, 0);
+    }
+
     private static String chooseStringKey(Object[] input) {
         if (input == null) {
             return null;
@@ -3,6 +3,8 @@ package com.example.monilog;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.parser.ParserConfig;
 import com.alibaba.fastjson.util.TypeUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 import org.apache.commons.collections4.CollectionUtils;
 
@@ -23,6 +25,15 @@ class ReflectUtil {
 
     private static final Map<String, Field> FIELD_CACHE = new ConcurrentHashMap<>();
     private static final Map<Method, Class<?>> METHOD_OWNER_CACHE = new ConcurrentHashMap<>();
+    /**
+     * 单个类加载器下按类名缓存的类的数量上限
+     */
+    private static final int MAX_CACHED_CLASSES = 4096;
+    /**
+     * 类加载器 -> 栈帧中的类名 -> 加载到的类。类加载器与类均为弱引用，类加载器被丢弃(如devtools重启、重新部署)后缓存随之回收，
+     * 不会返回旧类加载器中的类，也不会阻止其被回收
+     */
+    private static final Cache<ClassLoader, Cache<String, Class<?>>> CLASS_CACHE = CacheBuilder.newBuilder().weakKeys().build();
 
 
     public static String getSimpleClassName(Class<?> cls) {
@@ -40,6 +51,36 @@ class ReflectUtil {
         return cls.getSimpleName();
     }
 
+    /**
+     * 带缓存的Class.forName，用于按栈帧类名加载业务类，优先使用线程上下文类加载器
+     */
+    static Class<?> forName(String clsName) throws ClassNotFoundException {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = ReflectUtil.class.getClassLoader();
+        }
+        if (loader == null) {
+            return Class.forName(clsName);
+        }
+        Cache<String, Class<?>> classes = CLASS_CACHE.getIfPresent(loader);
+        if (classes == null) {
+            classes = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_CLASSES).weakValues().build();
+            Cache<String, Class<?>> existing = CLASS_CACHE.asMap().putIfAbsent(loader, classes);
+            classes = existing == null ? classes : existing;
+        }
+        Class<?> cls = classes.getIfPresent(clsName);
+        if (cls != null) {
+            return cls;
+        }
+        try {
+            cls = Class.forName(clsName, true, loader);
+        } catch (ClassNotFoundException e) {
+            cls = Class.forName(clsName);
+        }
+        classes.put(clsName, cls);
+        return cls;
+    }
+
     public static boolean hasProperty(Class<?> cls, String propertyName) {
         String clsName = cls.getCanonicalName();
         try {
@@ -1,10 +1,10 @@
 package com.example.monilog;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
-import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import java.io.*;
@@ -12,82 +12,85 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-
+/**
+ * 请求包装：不再预先读取并复制整个请求体，而是在应用读取请求流时，把读到的字节同步复制(tee)到{@link CaptureBuffer}中，
+ * 请求体只在日志输出时才解码，且最多解码maxTextLen个字符。日志中只输出应用实际读到的内容，应用未读取的部分不会为了日志而被读取
+ */
 @Slf4j
 class RequestWrapper extends HttpServletRequestWrapper {
     private static final Charset CHARSET = StandardCharsets.UTF_8;
+    /**
+     * 单个字符最多占用的字节数，用于由maxTextLen换算捕获上限
+     */
+    private static final int MAX_BYTES_PER_CHAR = 4;
+
+    private final Charset charset;
+    private final int maxTextLen;
+    private final CaptureBuffer captured;
+    /**
+     * 通过setBody替换后的请求体
+     */
     private byte[] body;
+    private ServletInputStream inputStream;
+    private BufferedReader reader;
     private Map<String, String[]> modifiableParameters;
 
-    public RequestWrapper(HttpServletRequest request) throws IOException {
+    RequestWrapper(HttpServletRequest request, int maxTextLen, boolean pooled) {
         super(request);
         modifiableParameters = new HashMap<>(request.getParameterMap());
-        String sessionStream = getBodyString(request);
-        body = sessionStream.getBytes(CHARSET);
-    }
-
-    public String getBodyString() {
-        return StringUtil.encodeByteArray(body, CHARSET, "Binary data");
+        this.charset = resolveCharset(request.getCharacterEncoding());
+        this.maxTextLen = Math.max(maxTextLen, 1);
+        this.captured = new CaptureBuffer((int) Math.min(Integer.MAX_VALUE - 8, (long) this.maxTextLen * MAX_BYTES_PER_CHAR), pooled);
     }
 
     /**
-     * 获取请求Body
+     * 获取已捕获的请求体，最多解码maxTextLen个字符
      */
-    public String getBodyString(ServletRequest request) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        try (InputStream inputStream = cloneInputStream(request.getInputStream());
-             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, CHARSET))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
+    public String getBodyString() {
+        if (body != null) {
+            return CaptureBuffer.decode(body, body.length, false, charset, maxTextLen);
         }
-        return sb.toString();
+        return captured.decode(charset, maxTextLen);
     }
 
     /**
-     * 复制输入流
+     * 请求处理结束后归还捕获缓冲区，之后不再捕获
      */
-    public InputStream cloneInputStream(ServletInputStream inputStream) throws IOException {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        byte[] buffer = new byte[2048];
-        int len;
-        while ((len = inputStream.read(buffer)) > -1) {
-            byteArrayOutputStream.write(buffer, 0, len);
-        }
-        byteArrayOutputStream.flush();
-        return new ByteArrayInputStream(byteArrayOutputStream.toByteArray());
+    void release() {
+        captured.release();
     }
 
-    @Override
-    public BufferedReader getReader() {
-        return new BufferedReader(new InputStreamReader(getInputStream(), CHARSET));
+    private static Charset resolveCharset(String encoding) {
+        if (StringUtils.isBlank(encoding)) {
+            return CHARSET;
+        }
+        try {
+            return Charset.forName(encoding);
+        } catch (Exception e) {
+            return CHARSET;
+        }
     }
 
     @Override
-    public ServletInputStream getInputStream() {
-
-        ByteArrayInputStream bis = new ByteArrayInputStream(body);
-        return new ServletInputStream() {
-            @Override
-            public int read() {
-                return bis.read();
-            }
-
-            @Override
-            public boolean isFinished() {
-                return false;
-            }
-
-            @Override
-            public boolean isReady() {
-                return false;
-            }
+    public BufferedReader getReader() throws IOException {
+        if (body != null) {
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+        if (reader == null) {
+            reader = new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+        return reader;
+    }
 
-            @Override
-            public void setReadListener(ReadListener readListener) {
-            }
-        };
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (body != null) {
+            return new BodyInputStream(body);
+        }
+        if (inputStream == null) {
+            inputStream = new TeeInputStream(super.getInputStream());
+        }
+        return inputStream;
     }
 
     /**
@@ -96,7 +99,7 @@ class RequestWrapper extends HttpServletRequestWrapper {
      * @param body 赋值信息
      */
     public void setBody(String body) {
-        this.body = body.getBytes(CHARSET);
+        this.body = body.getBytes(charset);
     }
 
     public void setParameter(String key, Object value) {
@@ -132,4 +135,92 @@ class RequestWrapper extends HttpServletRequestWrapper {
         return getParameterMap().get(name);
     }
 
+    /**
+     * 读取原始请求流，并把读到的字节复制到捕获缓冲区
+     */
+    private final class TeeInputStream extends ServletInputStream {
+        private final ServletInputStream delegate;
+
+        TeeInputStream(ServletInputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            if (b >= 0) {
+                captured.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = delegate.read(b, off, len);
+            if (n > 0) {
+                captured.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return delegate.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return delegate.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            delegate.setReadListener(readListener);
+        }
+    }
+
+    /**
+     * 读取通过setBody替换后的请求体
+     */
+    private static final class BodyInputStream extends ServletInputStream {
+        private final ByteArrayInputStream bis;
+
+        BodyInputStream(byte[] body) {
+            this.bis = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public int read() {
+            return bis.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return bis.read(b, off, len);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return bis.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+        }
+    }
 }
@@ -0,0 +1,204 @@
+package com.example.monilog;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 响应包装：响应体直接写给客户端，同时把前N个字节复制(tee)到{@link CaptureBuffer}中，用于日志输出与结果解析，
+ * 不再像ContentCachingResponseWrapper那样在内存中缓存整个响应体、等业务处理完才开始向客户端输出
+ *
+ * @author yp
+ * @date 2024/04/03
+ */
+class ResponseWrapper extends HttpServletResponseWrapper {
+    private static final int ENCODE_BUF_SIZE = 256;
+
+    private final CaptureBuffer captured;
+    private ServletOutputStream outputStream;
+    private TeeWriter writer;
+
+    ResponseWrapper(HttpServletResponse response, int captureLimit, boolean pooled) {
+        super(response);
+        this.captured = new CaptureBuffer(captureLimit, pooled);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            outputStream = new TeeOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+
+    /**
+     * 直接使用容器的writer，本身不缓冲字符，异步请求中写入的内容无需额外刷新
+     */
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new TeeWriter(super.getWriter(), getCharset());
+        }
+        return writer;
+    }
+
+    /**
+     * 已写入的内容被丢弃，捕获的内容随之丢弃，之后重新获取输出流/writer
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        captured.reset();
+        outputStream = null;
+        writer = null;
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        captured.reset();
+        if (writer != null) {
+            writer.encoder.reset();
+        }
+    }
+
+    /**
+     * 已捕获的响应体
+     */
+    CaptureBuffer getCaptured() {
+        return captured;
+    }
+
+    Charset getCharset() {
+        String encoding = getCharacterEncoding();
+        if (StringUtils.isBlank(encoding)) {
+            return StandardCharsets.ISO_8859_1;
+        }
+        try {
+            return Charset.forName(encoding);
+        } catch (Exception e) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+
+    /**
+     * 日志输出后归还捕获缓冲区
+     */
+    void release() {
+        captured.release();
+    }
+
+    /**
+     * 写入容器的writer，同时把字符按响应编码复制到捕获缓冲区，捕获已满后只计数
+     */
+    private final class TeeWriter extends PrintWriter {
+        private final CharsetEncoder encoder;
+        private final ByteBuffer encoded = ByteBuffer.allocate(ENCODE_BUF_SIZE);
+        private final char[] single = new char[1];
+
+        TeeWriter(PrintWriter delegate, Charset charset) {
+            super(delegate);
+            this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public void write(int c) {
+            synchronized (lock) {
+                super.write(c);
+                single[0] = (char) c;
+                capture(CharBuffer.wrap(single));
+            }
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) {
+            synchronized (lock) {
+                super.write(buf, off, len);
+                capture(CharBuffer.wrap(buf, off, len));
+            }
+        }
+
+        @Override
+        public void write(String s, int off, int len) {
+            synchronized (lock) {
+                super.write(s, off, len);
+                capture(CharBuffer.wrap(s, off, off + len));
+            }
+        }
+
+        /**
+         * PrintWriter.println()直接写入被包装的writer，需经过write才能被捕获
+         */
+        @Override
+        public void println() {
+            write(System.lineSeparator());
+        }
+
+        private void capture(CharBuffer in) {
+            while (in.hasRemaining()) {
+                if (captured.isFull()) {
+                    captured.skip(in.remaining());
+                    return;
+                }
+                // 跨两次写入的代理对由encoder保留到下一次写入
+                boolean overflow = encoder.encode(in, encoded, false).isOverflow();
+                captured.write(encoded.array(), 0, encoded.position());
+                encoded.clear();
+                if (!overflow) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private final class TeeOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+
+        TeeOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            captured.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            captured.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
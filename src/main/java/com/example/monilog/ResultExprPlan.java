@@ -0,0 +1,365 @@
+package com.example.monilog;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONPath;
+import com.alibaba.fastjson.serializer.FieldSerializer;
+import com.alibaba.fastjson.serializer.JavaBeanSerializer;
+import com.alibaba.fastjson.serializer.ObjectSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.util.TypeUtils;
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 编译后的结果解析表达式：逗号分隔的备选路径只拆分、预编译一次，并按结果类型缓存每个备选路径的访问方式
+ * (方法/字段访问器，或确定不存在)，解析时通常只需一次直接访问。解析语义与逐个路径求值完全一致
+ *
+ * @author yp
+ * @date 2024/03/22
+ */
+final class ResultExprPlan {
+    /**
+     * 表达式来自注解与配置，数量有限；超过上限时不再缓存，防止动态拼接的表达式撑爆内存
+     */
+    private static final int MAX_PLANS = 512;
+    private static final Map<String, ResultExprPlan> PLANS = new ConcurrentHashMap<>();
+    private static final Pattern SIMPLE_PATH = Pattern.compile("\\$\\.[A-Za-z_][A-Za-z0-9_]*");
+    private static final Pattern FIELD_PATH = Pattern.compile("\\$(\\.[A-Za-z_][A-Za-z0-9_]*)+");
+    /**
+     * 备选路径在某个类型上确定取不到值
+     */
+    private static final Object ABSENT = new Object();
+    /**
+     * 备选路径需要在运行时按实例求值
+     */
+    private static final Object DYNAMIC = new Object();
+
+    private final Alternative[] alternatives;
+    /**
+     * 求值需要访问的JSON字段路径，有备选路径无法按字段提取(如数组下标、过滤、深度扫描等)时为null
+     */
+    private final List<String[]> fieldPaths;
+    private final ClassValue<Binding> bindings = new ClassValue<Binding>() {
+        @Override
+        protected Binding computeValue(Class<?> type) {
+            return new Binding(alternatives, type);
+        }
+    };
+
+    private ResultExprPlan(List<String> exprs) {
+        this.alternatives = new Alternative[exprs.size()];
+        for (int i = 0; i < alternatives.length; i++) {
+            alternatives[i] = new Alternative(exprs.get(i));
+        }
+        List<String[]> paths = new ArrayList<>(alternatives.length);
+        for (Alternative alt : alternatives) {
+            if (!alt.valid) {
+                continue;
+            }
+            if (alt.isMethod) {
+                // JSONObject自身的无参方法(如size())依赖完整的对象
+                if (hasNoArgMethod(JSONObject.class, alt.methodName)) {
+                    paths = null;
+                    break;
+                }
+                continue;
+            }
+            String[] fieldPath = alt.fieldPath();
+            if (fieldPath == null) {
+                paths = null;
+                break;
+            }
+            paths.add(fieldPath);
+        }
+        this.fieldPaths = paths;
+    }
+
+    private static boolean hasNoArgMethod(Class<?> cls, String methodName) {
+        try {
+            cls.getMethod(methodName);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    static ResultExprPlan of(String jsonpaths) {
+        ResultExprPlan plan = PLANS.get(jsonpaths);
+        if (plan != null) {
+            return plan;
+        }
+        plan = new ResultExprPlan(SplitterUtil.splitByComma(jsonpaths));
+        if (PLANS.size() < MAX_PLANS) {
+            ResultExprPlan existing = PLANS.putIfAbsent(jsonpaths, plan);
+            return existing == null ? plan : existing;
+        }
+        return plan;
+    }
+
+    /**
+     * 对JSON结果求值时需要的字段路径，为null时只能对完整的结果求值
+     */
+    List<String[]> getFieldPaths() {
+        return fieldPaths;
+    }
+
+    /**
+     * 从多个备选路径中依次解析结果，返回找到的第一个最匹配的结果
+     */
+    <T> ParsedInfo<T> evaluate(Object obj, Class<T> resultCls) {
+        if (obj == null) {
+            return null;
+        }
+        Preconditions.checkArgument(alternatives.length > 0, "解析路径不能为空");
+        boolean isBool = ParsedInfo.isBool(resultCls);
+        // 以Class对象本身作为结果时，方法是在该Class上查找的，无法按类型缓存
+        Binding binding = obj instanceof Class ? null : bindings.get(obj.getClass());
+        int hint = binding == null || !isBool ? -1 : binding.hint;
+        ParsedInfo<T> hintResult = null;
+        if (hint >= 0) {
+            // 上次命中的路径优先求值：bool类型只要任一路径为true结果即为true，与求值顺序无关
+            hintResult = alternatives[hint].parse(obj, binding.accessors[hint], resultCls);
+            if (isTrue(hintResult)) {
+                return hintResult;
+            }
+        }
+        ParsedInfo<T> firstCompatible = null;
+        ParsedInfo<T> firstNotCompatible = null;
+        int[] candidates = binding == null ? null : binding.candidates;
+        int n = candidates == null ? alternatives.length : candidates.length;
+        for (int i = 0; i < n; i++) {
+            int idx = candidates == null ? i : candidates[i];
+            ParsedInfo<T> ret = idx == hint ? hintResult : alternatives[idx].parse(obj, binding == null ? DYNAMIC : binding.accessors[idx], resultCls);
+            if (ret == null) {
+                continue;
+            }
+            if (!ret.isExpectCompatible()) {//结果不兼容，则一定不是期望结果
+                if (firstNotCompatible == null) {
+                    firstNotCompatible = ret;
+                }
+                continue;
+            }
+            if (isBool && isTrue(ret)) {
+                if (binding != null) {
+                    binding.hint = idx;
+                }
+                return ret;
+            }
+            //结果类型兼容，但值是空的，表示没取到。例如$.getMsg()，匹配到路径了，但结果中值是null
+            if (firstCompatible == null) {
+                firstCompatible = ret;
+            }
+        }
+        //如果均未找到符合期望的，但有字段名被遍历到过，则返回最匹配到那个结果
+        return firstCompatible != null ? firstCompatible : firstNotCompatible;
+    }
+
+    private static boolean isTrue(ParsedInfo<?> ret) {
+        if (ret == null || !ret.isExpectCompatible()) {
+            return false;
+        }
+        Object val = ret.getResult();
+        return val != null && (Boolean) val;
+    }
+
+    /**
+     * 单个备选路径，例如：$.code=SUCCESS、$.isSuccess()
+     */
+    private static final class Alternative {
+        private final String path;
+        private final String expect;
+        private final boolean valid;
+        private final boolean isMethod;
+        private final String methodName;
+        /**
+         * 形如$.name的简单属性路径的属性名，可直接从Map或JavaBean上取值
+         */
+        private final String simpleKey;
+        private final JSONPath compiled;
+
+        Alternative(String jsonpath) {
+            this.valid = StringUtils.contains(jsonpath, "$.");
+            if (!valid) {
+                MoniLogUtil.innerDebug("解析路径非法:{}，需要以\"$.\"指定解析路径的根", jsonpath);
+            }
+            String p = jsonpath;
+            String e = null;
+            if (jsonpath.contains(ResultParser.EXPECT_SPLITTER1)) {
+                String[] splits = jsonpath.split(ResultParser.EXPECT_SPLITTER1);
+                p = splits[0].trim();
+                e = splits.length > 1 ? splits[1].trim() : null;
+            } else if (jsonpath.contains(ResultParser.EXPECT_SPLITTER2)) {
+                String[] splits = jsonpath.split(ResultParser.EXPECT_SPLITTER2);
+                p = splits[0].trim();
+                e = splits.length > 1 ? splits[1].trim() : null;
+            }
+            this.path = p;
+            this.expect = e;
+            this.isMethod = p.contains("(") && p.contains(")");
+            this.methodName = isMethod ? StringUtils.remove(StringUtils.remove(StringUtils.remove(p, "$."), ")"), "(").trim() : null;
+            String key = !isMethod && SIMPLE_PATH.matcher(p).matches() ? p.substring(2) : null;
+            // JSONPath对Map的size/length属性有特殊处理，这里不走直接取值
+            this.simpleKey = "size".equals(key) || "length".equals(key) ? null : key;
+            this.compiled = valid && !isMethod ? compile(p) : null;
+        }
+
+        /**
+         * 形如$.a.b的属性路径拆分后的属性名，其它形式的路径返回null
+         */
+        String[] fieldPath() {
+            if (!FIELD_PATH.matcher(path).matches()) {
+                return null;
+            }
+            String[] fields = path.substring(2).split("\\.");
+            for (String field : fields) {
+                // JSONPath对size/length属性有特殊处理
+                if ("size".equals(field) || "length".equals(field)) {
+                    return null;
+                }
+            }
+            return fields;
+        }
+
+        private static JSONPath compile(String path) {
+            try {
+                return JSONPath.compile(path);
+            } catch (Throwable e) {
+                MoniLogUtil.innerDebug("resultParser compile error, path:{}", path, e);
+                return null;
+            }
+        }
+
+        /**
+         * 解析到的结果有三种情况：1是没有找到对应的path，此时返回null，2是找到了path但未取到值，3是找到了path且取到了值
+         */
+        <T> ParsedInfo<T> parse(Object obj, Object accessor, Class<T> resultCls) {
+            if (!valid || accessor == ABSENT) {
+                return null;
+            }
+            try {
+                Object value;
+                if (accessor instanceof Method) {
+                    value = ((Method) accessor).invoke(obj);
+                } else if (accessor instanceof FieldSerializer) {
+                    value = ((FieldSerializer) accessor).getPropertyValueDirect(obj);
+                    if (value == null) {
+                        return null;
+                    }
+                } else if (isMethod) {
+                    Method method = resolveMethod(obj, methodName);
+                    if (method == null) {
+                        return null;
+                    }
+                    value = method.invoke(obj);
+                } else {
+                    value = evalPath(obj);
+                    if (value == null) {
+                        return null;
+                    }
+                }
+                ParsedInfo<T> p = new ParsedInfo<>(resultCls);
+                p.setValue(value);
+                p.setExpect(expect);
+                return p;
+            } catch (NullPointerException e) {
+                if (!isMethod) {
+                    return null;
+                }
+                MoniLogUtil.innerDebug("resultParser parseObjVal error, obj:{}, path:{}", JSON.toJSONString(obj), path, e);
+            } catch (Throwable e) {
+                MoniLogUtil.innerDebug(isMethod ? "resultParser parseObjVal error, obj:{}, path:{}" : "resultParser evalVal error, obj:{}, path:{}", JSON.toJSONString(obj), path, e);
+            }
+            return null;
+        }
+
+        /**
+         * 按JSONPath.contains的语义取值：取到的值为null即视为路径不存在
+         */
+        private Object evalPath(Object obj) {
+            if (compiled == null || (obj instanceof String && "null".equalsIgnoreCase((String) obj)) || ObjectUtils.isEmpty(obj)) {
+                return null;
+            }
+            if (simpleKey != null && obj instanceof Map) {
+                return ((Map<?, ?>) obj).get(simpleKey);
+            }
+            return compiled.contains(obj) ? compiled.eval(obj) : null;
+        }
+    }
+
+    /**
+     * 表达式在某个结果类型上的绑定：每个备选路径的访问器，以及可能取到值的备选路径下标
+     */
+    private static final class Binding {
+        private final Object[] accessors;
+        private final int[] candidates;
+        /**
+         * 上次判定为true的备选路径下标
+         */
+        private volatile int hint = -1;
+
+        Binding(Alternative[] alternatives, Class<?> type) {
+            this.accessors = new Object[alternatives.length];
+            JavaBeanSerializer beanSerializer = beanSerializer(type);
+            List<Integer> list = new ArrayList<>(alternatives.length);
+            for (int i = 0; i < alternatives.length; i++) {
+                Alternative alt = alternatives[i];
+                Object accessor;
+                if (!alt.valid) {
+                    accessor = ABSENT;
+                } else if (alt.isMethod) {
+                    Method method = resolveMethod(type, alt.methodName);
+                    accessor = method == null ? ABSENT : method;
+                } else if (beanSerializer != null && alt.simpleKey != null) {
+                    FieldSerializer fs = beanSerializer.getFieldSerializer(TypeUtils.fnv1a_64(alt.simpleKey));
+                    accessor = fs == null ? ABSENT : fs;
+                } else {
+                    accessor = DYNAMIC;
+                }
+                accessors[i] = accessor;
+                if (accessor != ABSENT) {
+                    list.add(i);
+                }
+            }
+            this.candidates = list.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * 与JSONPath取属性值时的判定保持一致：字符串、Map、集合、数组均按实例求值，其余类型由JavaBean序列化器决定有哪些属性
+         */
+        private static JavaBeanSerializer beanSerializer(Class<?> type) {
+            if (CharSequence.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type)
+                    || Collection.class.isAssignableFrom(type) || type.isArray()) {
+                return null;
+            }
+            try {
+                ObjectSerializer serializer = SerializeConfig.getGlobalInstance().getObjectWriter(type);
+                return serializer instanceof JavaBeanSerializer ? (JavaBeanSerializer) serializer : null;
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+    }
+
+    private static Method resolveMethod(Object target, String methodName) {
+        Method method = ReflectUtil.getMethodWithoutException(target, methodName, new Object[]{});
+        if (method == null) {
+            return null;
+        }
+        try {
+            method.setAccessible(true);
+            return method;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+}
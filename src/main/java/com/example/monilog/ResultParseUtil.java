@@ -5,13 +5,21 @@ import com.alibaba.fastjson.JSON;
 import org.apache.commons.lang3.StringUtils;
 
 import java.lang.reflect.Array;
-import java.util.Collection;
-import java.util.Map;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author yepei
  */
 final class ResultParseUtil {
+    /**
+     * 表达式组合来自注解与配置，数量有限；超过上限时不再缓存
+     */
+    private static final int MAX_FIELD_SETS = 512;
+    private static final Object NOT_EXTRACTABLE = new Object();
+    private static final Map<String, Object> FIELD_SETS = new ConcurrentHashMap<>();
+
     static ParsedResult parseResult(Object returnObj, ResultParseStrategy strategy, Throwable t, String boolExpr, String codeExpr, String msgExpr) {
         if (t != null) {//有异常
             ErrorInfo errorInfo = ExceptionUtil.parseException(t);
@@ -68,20 +76,10 @@ final class ResultParseUtil {
 
     private static String correctBoolExpr(String boolExpr) {
         if (StringUtils.isBlank(boolExpr)) {
-            try {
-                MoniLogProperties moniLogProperties = SpringUtils.getBeanWithoutException(MoniLogProperties.class);
-                boolExpr = moniLogProperties == null ? null : moniLogProperties.getGlobalDefaultBoolExpr();
-            } catch (Exception ex) {
-                MoniLogUtil.innerDebug("getBean of MoniLogProperties error", ex);
-            }
+            // 全局默认判别式在配置快照中已修正
+            return MoniLogRuntimeConfig.get().getDefaultBoolExpr();
         }
-        if (StringUtils.isNotBlank(boolExpr)) {
-            boolExpr = StringUtils.strip(boolExpr, ",");
-            if (StringUtils.startsWith(boolExpr, "+")) {
-                boolExpr = boolExpr.substring(1) + "," + ResultParser.Default_Bool_Expr;
-            }
-        }
-        return boolExpr;
+        return MoniLogRuntimeConfig.correctBoolExpr(boolExpr);
     }
 
 
@@ -101,6 +99,68 @@ final class ResultParseUtil {
                 && (!(o instanceof Collection) || !((Collection<?>) o).isEmpty());
     }
 
+    /**
+     * 从JSON响应体中取出用于结果解析的对象：解析表达式只访问字段(如$.code、$.data.status)时，
+     * 逐个token扫描响应体并只提取这些字段，找齐即停止，不再构建完整的DOM；否则完整解析响应体
+     *
+     * @param complete 响应体是否完整，不完整时只能按字段提取
+     * @return 用于结果解析的对象，响应体不是JSON或在找齐字段前被截断时返回null
+     */
+    static JSON extractResult(byte[] body, int len, boolean complete, Charset charset, ResultParseStrategy strategy, String boolExpr, String codeExpr, String msgExpr) {
+        if (body == null || len <= 0) {
+            return null;
+        }
+        if (JsonPrefixExtractor.isObject(body, len)) {
+            JsonPrefixExtractor.FieldSet fields = getFieldSet(strategy, boolExpr, codeExpr, msgExpr, null);
+            if (fields != null) {
+                return JsonPrefixExtractor.extract(body, len, charset, fields);
+            }
+        }
+        return complete ? StringUtil.tryConvert2Json(CaptureBuffer.decode(body, len, false, charset, len)) : null;
+    }
+
+    /**
+     * 结果解析需要的JSON字段集合
+     *
+     * @param extraFields 额外需要提取的顶层字段，如用户tag中引用的字段
+     * @return 无法按字段提取，只能完整解析时返回null
+     */
+    static JsonPrefixExtractor.FieldSet getFieldSet(ResultParseStrategy strategy, String boolExpr, String codeExpr, String msgExpr, Collection<String> extraFields) {
+        // 判空依赖整个结果对象
+        if (strategy == ResultParseStrategy.IfNotEmpty) {
+            return null;
+        }
+        // 默认判别式可能随配置变化，以修正后的判别式作为key
+        boolExpr = correctBoolExpr(boolExpr);
+        String key = boolExpr + '\n' + codeExpr + '\n' + msgExpr + (extraFields == null ? "" : '\n' + String.join(",", extraFields));
+        Object fields = FIELD_SETS.get(key);
+        if (fields == null) {
+            List<String[]> paths = new ArrayList<>();
+            boolean extractable = addFieldPaths(paths, boolExpr, ResultParser.Default_Bool_Expr)
+                    && addFieldPaths(paths, codeExpr, ResultParser.Default_ErrCode_Expr)
+                    && addFieldPaths(paths, msgExpr, ResultParser.Default_ErrMsg_Expr);
+            if (extractable && extraFields != null) {
+                for (String field : extraFields) {
+                    paths.add(new String[]{field});
+                }
+            }
+            fields = extractable ? JsonPrefixExtractor.FieldSet.of(paths) : NOT_EXTRACTABLE;
+            if (FIELD_SETS.size() < MAX_FIELD_SETS) {
+                FIELD_SETS.put(key, fields);
+            }
+        }
+        return fields == NOT_EXTRACTABLE ? null : (JsonPrefixExtractor.FieldSet) fields;
+    }
+
+    private static boolean addFieldPaths(List<String[]> paths, String expr, String defaultExpr) {
+        List<String[]> fieldPaths = ResultExprPlan.of(StringUtils.isBlank(expr) ? defaultExpr : expr).getFieldPaths();
+        if (fieldPaths == null) {
+            return false;
+        }
+        paths.addAll(fieldPaths);
+        return true;
+    }
+
     /**
      * 根据解析策略解析解析的结果，提取更加精确的业务信息
      */
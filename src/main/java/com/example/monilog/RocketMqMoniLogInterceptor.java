@@ -1,7 +1,8 @@
 package com.example.monilog;
 
 import com.alibaba.fastjson.JSON;
-import lombok.AllArgsConstructor;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -25,8 +26,11 @@ import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static com.example.monilog.MonilogMetrics.METRIC_PREFIX;
+
 public final class RocketMqMoniLogInterceptor {
     // Will be created at broker when isAutoCreateTopicEnable
     private static final String AUTO_CREATE_TOPIC_KEY_TOPIC = "TBW102";
@@ -64,23 +68,34 @@ public final class RocketMqMoniLogInterceptor {
         NOT_ALLOWED_SEND_TOPIC_SET.add(RMQ_SYS_OFFSET_MOVED_EVENT);
     }
 
-    @AllArgsConstructor
+    @RequiredArgsConstructor
     public static class EnhancedListenerConcurrently implements MessageListenerConcurrently {
         private final MessageListenerConcurrently delegate;
+        private volatile ConsumerDelegation delegation;
 
         @Override
         public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgs, ConsumeConcurrentlyContext context) {
-            return (ConsumeConcurrentlyStatus) new ConsumerDelegation(delegate).onMessage(msgs, context);
+            ConsumerDelegation d = delegation;
+            if (d == null) {
+                // 首次消费时再解析监听器类，此时容器中的rocketMQListener已注入
+                delegation = d = new ConsumerDelegation(delegate);
+            }
+            return (ConsumeConcurrentlyStatus) d.onMessage(msgs, context);
         }
     }
 
-    @AllArgsConstructor
+    @RequiredArgsConstructor
     public static class EnhancedListenerOrderly implements MessageListenerOrderly {
         private final MessageListenerOrderly delegate;
+        private volatile ConsumerDelegation delegation;
 
         @Override
         public ConsumeOrderlyStatus consumeMessage(List<MessageExt> msgs, ConsumeOrderlyContext context) {
-            return (ConsumeOrderlyStatus) new ConsumerDelegation(delegate).onMessage(msgs, context);
+            ConsumerDelegation d = delegation;
+            if (d == null) {
+                delegation = d = new ConsumerDelegation(delegate);
+            }
+            return (ConsumeOrderlyStatus) d.onMessage(msgs, context);
         }
     }
 
@@ -129,6 +144,7 @@ public final class RocketMqMoniLogInterceptor {
                 MessageExt messageExt = msgs.get(0);
                 String[] tags = TagBuilder.of("topic", messageExt.getTopic(), "tag", messageExt.getTags()).toArray();
                 params.setTags(tags);
+                recordBatchMetrics(msgs, start);
                 result = doConsume(msgs, c);
                 params.setSuccess(Objects.equals(result, ConsumeConcurrentlyStatus.CONSUME_SUCCESS) || Objects.equals(result, ConsumeOrderlyStatus.SUCCESS));
                 params.setMsgCode(result.toString());
@@ -149,25 +165,57 @@ public final class RocketMqMoniLogInterceptor {
         }
     }
 
+    /**
+     * 批量消费的指标：每批消息数、每批消息字节数、消费延迟(当前时间-消息产生时间/存储时间)，以及按topic的消息吞吐量
+     */
+    private static void recordBatchMetrics(List<MessageExt> msgs, long now) {
+        try {
+            String topic = msgs.get(0).getTopic();
+            String[] tags = {"application", SpringUtils.application, "topic", topic};
+            long bytes = 0;
+            Timer bornLag = MonilogMetrics.eventDuration(METRIC_PREFIX + "rocketmq_consumer_born_lag" + MonitorType.TIMER.getMark(), tags);
+            Timer storeLag = MonilogMetrics.eventDuration(METRIC_PREFIX + "rocketmq_consumer_store_lag" + MonitorType.TIMER.getMark(), tags);
+            for (MessageExt msg : msgs) {
+                byte[] body = msg.getBody();
+                bytes += body == null ? 0 : body.length;
+                if (bornLag != null && msg.getBornTimestamp() > 0) {
+                    bornLag.record(Math.max(0, now - msg.getBornTimestamp()), TimeUnit.MILLISECONDS);
+                }
+                if (storeLag != null && msg.getStoreTimestamp() > 0) {
+                    storeLag.record(Math.max(0, now - msg.getStoreTimestamp()), TimeUnit.MILLISECONDS);
+                }
+            }
+            MonilogMetrics.summary(METRIC_PREFIX + "rocketmq_consumer_batch_size" + MonitorType.SUMMARY.getMark(), msgs.size(), tags);
+            MonilogMetrics.summary(METRIC_PREFIX + "rocketmq_consumer_batch_bytes" + MonitorType.SUMMARY.getMark(), bytes, tags);
+            MonilogMetrics.count(METRIC_PREFIX + "rocketmq_consumer_message" + MonitorType.RECORD.getMark(), msgs.size(), tags);
+        } catch (Exception e) {
+            MoniLogUtil.innerDebug("RocketMqMoniLogInterceptor.recordBatchMetrics error", e);
+        }
+    }
+
+    /**
+     * 消息体与msgId等信息均延迟到日志真正输出时才解码与拼接
+     */
     private static Object[] formatInputMsgs(List<MessageExt> msgs) {
         if (CollectionUtils.isEmpty(msgs)) {
             return null;
         }
-        List<Object> obj = new ArrayList<>();
-        Map<String,Object> msgInfoMap = new HashMap<>();
-        try {
-            for (MessageExt msg : msgs) {
+        Object[] obj = new Object[msgs.size() + 1];
+        for (int i = 0; i < msgs.size(); i++) {
+            MessageExt msg = msgs.get(i);
+            obj[i] = LazyLogArg.of(() -> {
                 String str = new String(msg.getBody(), StandardCharsets.UTF_8);
                 JSON json = StringUtil.tryConvert2Json(str);
-                obj.add(json == null ? str : json);
-            }
+                return json == null ? str : json;
+            });
+        }
+        obj[msgs.size()] = LazyLogArg.of(() -> {
+            Map<String, Object> msgInfoMap = new HashMap<>();
             msgInfoMap.put("msgId", msgs.stream().map(MessageExt::getMsgId).collect(Collectors.joining(",")));
             msgInfoMap.put("topic", msgs.stream().map(MessageExt::getTopic).distinct().collect(Collectors.joining(",")));
-            obj.add(JSON.toJSONString(msgInfoMap));
-        } catch (Exception e) {
-            MoniLogUtil.innerDebug("RocketMqMoniLogInterceptor.formatInputMsgs error", e.getMessage());
-        }
-        return obj.toArray(new Object[0]);
+            return JSON.toJSONString(msgInfoMap);
+        });
+        return obj;
     }
 
     @Slf4j
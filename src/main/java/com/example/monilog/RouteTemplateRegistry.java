@@ -0,0 +1,377 @@
+package com.example.monilog;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在线学习的url路由模板：按host维护路径片段的前缀树，同一位置出现的不同取值超过阈值后，该位置折叠为{var}，
+ * 折叠前重复出现过的静态片段仍按原值输出，纯数字片段直接视为{n}。解析一个路径只需沿树走一遍(O(深度))，不再依赖随机串识别，
+ * 因此url tag的取值个数有上界。已折叠的位置会定期写入本地文件，重启后先加载再继续学习
+ *
+ * @author yp
+ * @date 2024/03/30
+ */
+final class RouteTemplateRegistry {
+    static final String VAR = "{var}";
+    static final String NUM = "{n}";
+    private static final String PATH_SEP = "/";
+    private static final String OVERFLOW_HOST = "__overflow__";
+    private static final long FLUSH_INTERVAL_SECONDS = 30;
+    /**
+     * 折叠时保留的片段至少出现的次数：id等随机取值通常只出现一次，/orders/list等静态片段会重复出现
+     */
+    private static final int STATIC_MIN_HITS = 2;
+
+    private static final ConcurrentHashMap<String, HostTree> HOSTS = new ConcurrentHashMap<>();
+    private static volatile boolean dirty;
+    /**
+     * 持久化文件，未开启持久化或尚未初始化时为null
+     */
+    private static volatile Path storeFile;
+    private static volatile boolean initialized;
+
+    private RouteTemplateRegistry() {
+    }
+
+    /**
+     * 将url映射为路由模板，仅返回解码后的路径部分(不含host、query与fragment)
+     *
+     * @param defaultHost url为相对路径时请求的目标host
+     */
+    static String resolve(String defaultHost, String url, MoniLogProperties.RouteTemplateProperties cfg) {
+        if (!initialized) {
+            init(cfg);
+        }
+        int start = 0;
+        String host = defaultHost == null ? "" : defaultHost;
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd > 0) {
+            int hostStart = schemeEnd + 3;
+            int hostEnd = indexOfAny(url, hostStart, '/', '?', '#');
+            host = url.substring(hostStart, hostEnd);
+            start = hostEnd;
+        }
+        int end = indexOfAny(url, start, '?', '#');
+        if (start >= end) {
+            return PATH_SEP;
+        }
+        HostTree tree = getTree(host, cfg);
+        StringBuilder sb = new StringBuilder(end - start + 8);
+        Node node = tree.root;
+        int segStart = start;
+        while (true) {
+            int segEnd = url.indexOf('/', segStart);
+            if (segEnd < 0 || segEnd > end) {
+                segEnd = end;
+            }
+            String segment = decode(url.substring(segStart, segEnd));
+            String token;
+            if (node == null) {
+                // 节点数已达上限，剩余的未知片段不再学习
+                token = isNumeric(segment) ? NUM : segment.isEmpty() ? segment : VAR;
+            } else {
+                token = tree.visit(node, segment, cfg);
+                node = token == VAR ? node.var : node.children.get(token);
+            }
+            sb.append(token);
+            if (segEnd >= end) {
+                break;
+            }
+            sb.append('/');
+            segStart = segEnd + 1;
+        }
+        return sb.toString();
+    }
+
+    private static HostTree getTree(String host, MoniLogProperties.RouteTemplateProperties cfg) {
+        HostTree tree = HOSTS.get(host);
+        if (tree != null) {
+            return tree;
+        }
+        if (HOSTS.size() >= cfg.getMaxHosts()) {
+            host = OVERFLOW_HOST;
+        }
+        return HOSTS.computeIfAbsent(host, k -> new HostTree());
+    }
+
+    /**
+     * 与URI.getPath一致：解码%XX，"+"不视为空格
+     */
+    private static String decode(String segment) {
+        if (segment.indexOf('%') < 0) {
+            return segment;
+        }
+        try {
+            return URLDecoder.decode(segment.replace("+", "%2B"), "UTF-8");
+        } catch (Exception e) {
+            return segment;
+        }
+    }
+
+    private static boolean isNumeric(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOfAny(String s, int from, char c1, char c2) {
+        return indexOfAny(s, from, c1, c2, c2);
+    }
+
+    private static int indexOfAny(String s, int from, char c1, char c2, char c3) {
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == c1 || c == c2 || c == c3) {
+                return i;
+            }
+        }
+        return s.length();
+    }
+
+    private static synchronized void init(MoniLogProperties.RouteTemplateProperties cfg) {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        if (!cfg.isPersist()) {
+            return;
+        }
+        try {
+            String dir = StringUtils.isNotBlank(cfg.getStoreDir()) ? cfg.getStoreDir() : System.getProperty("user.home") + File.separator + ".monilog";
+            String app = StringUtils.defaultIfBlank(SpringUtils.application, "default");
+            Path file = Paths.get(dir, "route-templates-" + app + ".txt");
+            load(file, cfg);
+            storeFile = file;
+            ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "monilog-route-template-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(RouteTemplateRegistry::flush, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(RouteTemplateRegistry::flush, "monilog-route-template-shutdown"));
+        } catch (Throwable e) {
+            MoniLogUtil.innerDebug("route template store init failed", e);
+        }
+    }
+
+    /**
+     * 每行记录一个已折叠的位置：host + TAB + 从根到该位置的片段(以/连接) + "/{var}"；
+     * 或已折叠位置下保留的静态片段：host + TAB + 从根到该片段的片段(以/连接)
+     */
+    private static void load(Path file, MoniLogProperties.RouteTemplateProperties cfg) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            if (tab < 0) {
+                continue;
+            }
+            HostTree tree = getTree(line.substring(0, tab), cfg);
+            String[] tokens = line.substring(tab + 1).split(PATH_SEP, -1);
+            boolean collapsed = VAR.equals(tokens[tokens.length - 1]);
+            int depth = collapsed ? tokens.length - 1 : tokens.length;
+            Node node = tree.root;
+            for (int i = 0; i < depth && node != null; i++) {
+                node = VAR.equals(tokens[i]) ? tree.collapse(node) : tree.child(node, tokens[i], cfg);
+                if (node != null) {
+                    // 文件中的片段都已被保留，之后折叠时不再丢弃
+                    node.hits = STATIC_MIN_HITS;
+                }
+            }
+            if (collapsed && node != null) {
+                tree.collapse(node);
+            }
+        }
+        dirty = false;
+    }
+
+    private static synchronized void flush() {
+        Path file = storeFile;
+        if (file == null || !dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, HostTree> entry : HOSTS.entrySet()) {
+                    writeCollapsed(writer, entry.getKey(), entry.getValue().root, new ArrayList<>());
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Throwable e) {
+            dirty = true;
+            MoniLogUtil.innerDebug("route template store flush failed, file:{}", file, e);
+        }
+    }
+
+    private static void writeCollapsed(BufferedWriter writer, String host, Node node, List<String> prefix) throws IOException {
+        Node var = node.var;
+        if (var != null) {
+            writeLine(writer, host, prefix, VAR);
+            for (String key : node.children.keySet()) {
+                if (!NUM.equals(key)) {
+                    writeLine(writer, host, prefix, key);
+                }
+            }
+            prefix.add(VAR);
+            writeCollapsed(writer, host, var, prefix);
+            prefix.remove(prefix.size() - 1);
+        }
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            prefix.add(entry.getKey());
+            writeCollapsed(writer, host, entry.getValue(), prefix);
+            prefix.remove(prefix.size() - 1);
+        }
+    }
+
+    private static void writeLine(BufferedWriter writer, String host, List<String> prefix, String last) throws IOException {
+        writer.write(host);
+        writer.write('\t');
+        for (String token : prefix) {
+            writer.write(token);
+            writer.write(PATH_SEP);
+        }
+        writer.write(last);
+        writer.newLine();
+    }
+
+    /**
+     * 单个host的路由树
+     */
+    private static final class HostTree {
+        private final Node root = new Node();
+        private final AtomicInteger nodes = new AtomicInteger();
+
+        /**
+         * 记录一个片段并返回其在模板中的取值：{n}、{var}或片段本身
+         */
+        String visit(Node node, String segment, MoniLogProperties.RouteTemplateProperties cfg) {
+            if (isNumeric(segment)) {
+                return child(node, NUM, cfg) == null ? VAR : NUM;
+            }
+            // 折叠前已学习到的片段仍按原值输出
+            Node child = node.children.get(segment);
+            if (child == null) {
+                if (node.var != null) {
+                    return VAR;
+                }
+                if (node.children.size() >= cfg.getCollapseThreshold()) {
+                    collapse(node);
+                    return VAR;
+                }
+                // 节点数达到上限时child返回null，后续片段不再学习
+                child = child(node, segment, cfg);
+                if (child == null) {
+                    return VAR;
+                }
+            }
+            if (child.hits < STATIC_MIN_HITS) {
+                child.hits++;
+            }
+            return segment;
+        }
+
+        Node child(Node node, String token, MoniLogProperties.RouteTemplateProperties cfg) {
+            Node child = node.children.get(token);
+            if (child != null) {
+                return child;
+            }
+            if (nodes.get() >= cfg.getMaxNodesPerHost()) {
+                return null;
+            }
+            child = node.children.computeIfAbsent(token, k -> {
+                nodes.incrementAndGet();
+                return new Node();
+            });
+            return child;
+        }
+
+        /**
+         * 将该位置折叠为{var}：只出现过一次的片段(多为id等随机取值)及其子树被丢弃，重复出现过的片段与数字片段的子树保留，
+         * 保留的片段不超过折叠阈值个，url tag的取值个数仍有上界
+         */
+        Node collapse(Node node) {
+            Node var = node.var;
+            if (var != null) {
+                return var;
+            }
+            synchronized (node) {
+                if (node.var == null) {
+                    node.var = new Node();
+                    int removed = 0;
+                    Iterator<Map.Entry<String, Node>> it = node.children.entrySet().iterator();
+                    while (it.hasNext()) {
+                        Map.Entry<String, Node> entry = it.next();
+                        if (!NUM.equals(entry.getKey()) && entry.getValue().hits < STATIC_MIN_HITS) {
+                            removed += entry.getValue().size();
+                            it.remove();
+                        }
+                    }
+                    nodes.addAndGet(1 - removed);
+                    dirty = true;
+                }
+                return node.var;
+            }
+        }
+    }
+
+    private static final class Node {
+        private final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<>(4);
+        /**
+         * 折叠后所有非数字片段共用的子节点
+         */
+        private volatile Node var;
+        /**
+         * 片段被访问的次数，最多记到STATIC_MIN_HITS，只用于折叠时识别静态片段，并发下不要求精确
+         */
+        private int hits;
+
+        /**
+         * 以该节点为根的子树节点数(含自身)
+         */
+        int size() {
+            int n = 1;
+            Node v = var;
+            if (v != null) {
+                n += v.size();
+            }
+            for (Node child : children.values()) {
+                n += child.size();
+            }
+            return n;
+        }
+    }
+}
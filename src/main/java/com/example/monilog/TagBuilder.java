@@ -1,23 +1,40 @@
 package com.example.monilog;
 
-import lombok.Getter;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
+ * 指标tag构建器，内部以String数组+长度表示k/v序列，避免中间List及toArray时的重复拷贝
+ *
  * @author yp
  * @date 2023/07/26
  */
-@Getter
 class TagBuilder {
-    private final List<String> tags;
+    /**
+     * 系统tag的固定schema，按顺序占用前16个槽位
+     */
+    private static final String[] SYSTEM_KEYS = {"result", "application", "logPoint", "env", "service", "action", "msgCode", "exception"};
+    private static final int SYSTEM_SLOTS = SYSTEM_KEYS.length << 1;
+    private static final int DEFAULT_CAPACITY = 8;
+    /**
+     * 线程内复用的系统tag缓冲区，超过该长度时不再回收，防止个别超长tag长期占用内存
+     */
+    private static final int MAX_REUSE_CAPACITY = 256;
+    private static final ThreadLocal<TagBuilder> SYSTEM_TAGS = ThreadLocal.withInitial(() -> new TagBuilder(SYSTEM_SLOTS << 1));
+
+    private String[] tags;
+    private int size;
+    private boolean inUse;
 
     private TagBuilder() {
-        this.tags = new ArrayList<>();
+        this(DEFAULT_CAPACITY);
+    }
+
+    private TagBuilder(int capacity) {
+        this.tags = new String[capacity];
     }
 
     public static TagBuilder of(List<String> tags) {
@@ -25,10 +42,7 @@ class TagBuilder {
     }
 
     public static TagBuilder of(String[] tags) {
-        if (tags == null || tags.length == 0) {
-            return new TagBuilder();
-        }
-        return of(Arrays.asList(tags));
+        return new TagBuilder().add(tags);
     }
 
     public static TagBuilder of(String key, String value) {
@@ -43,23 +57,50 @@ class TagBuilder {
         return new TagBuilder().add(k1, v1).add(k2, v2).add(k3, v3);
     }
 
+    /**
+     * 获取当前线程复用的系统tag缓冲区，并按固定槽位写入8个系统tag。用完后须调用{@link #release()}归还；
+     * 若当前线程的缓冲区尚未归还(重入)，则返回一个新的实例
+     */
+    static TagBuilder systemTags(String result, String application, String logPoint, String env,
+                                 String service, String action, String msgCode, String exception) {
+        TagBuilder builder = SYSTEM_TAGS.get();
+        if (builder.inUse) {
+            builder = new TagBuilder(SYSTEM_SLOTS << 1);
+        }
+        builder.inUse = true;
+        String[] buf = builder.tags;
+        for (int i = 0; i < SYSTEM_KEYS.length; i++) {
+            buf[i << 1] = SYSTEM_KEYS[i];
+        }
+        buf[1] = valueOf(result);
+        buf[3] = valueOf(application);
+        buf[5] = valueOf(logPoint);
+        buf[7] = valueOf(env);
+        buf[9] = valueOf(service);
+        buf[11] = valueOf(action);
+        buf[13] = valueOf(msgCode);
+        buf[15] = valueOf(exception);
+        builder.size = SYSTEM_SLOTS;
+        return builder;
+    }
 
     public TagBuilder add(String[] tags) {
         if (tags == null || tags.length == 0) {
             return this;
         }
-        return add(Arrays.asList(tags));
+        ensureCapacity(size + (tags.length & ~1));
+        for (int i = 0; i < tags.length - 1; i += 2) {
+            this.add(tags[i], tags[i + 1]);
+        }
+        return this;
     }
 
     public TagBuilder add(List<String> tags) {
         if (CollectionUtils.isEmpty(tags)) {
             return this;
         }
-        for (int i = 0; i < tags.size() - 1; i++) {
-            String key = tags.get(i);
-            String value = tags.get(i + 1);
-            this.add(key, value);
-            i++;
+        for (int i = 0; i < tags.size() - 1; i += 2) {
+            this.add(tags.get(i), tags.get(i + 1));
         }
         return this;
     }
@@ -68,16 +109,53 @@ class TagBuilder {
         if (StringUtils.isBlank(key)) {
             return this;
         }
+        ensureCapacity(size + 2);
+        tags[size++] = key;
         // 必须保证tag的key一致
-        if (StringUtils.isBlank(value)) {
-            value = "";
-        }
-        this.tags.add(key);
-        this.tags.add(value);
+        tags[size++] = valueOf(value);
         return this;
     }
 
+    /**
+     * 当前k/v序列的长度(元素个数，为tag数的2倍)
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 内部缓冲区，仅前{@link #size()}个元素有效，调用方不得修改
+     */
+    String[] buffer() {
+        return tags;
+    }
+
+    /**
+     * 归还线程复用的系统tag缓冲区
+     */
+    void release() {
+        if (!inUse) {
+            return;
+        }
+        inUse = false;
+        Arrays.fill(tags, 0, size, null);
+        size = 0;
+        if (tags.length > MAX_REUSE_CAPACITY) {
+            tags = new String[SYSTEM_SLOTS << 1];
+        }
+    }
+
     public String[] toArray() {
-        return tags.toArray(new String[0]);
+        return Arrays.copyOf(tags, size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > tags.length) {
+            tags = Arrays.copyOf(tags, Math.max(capacity, tags.length << 1));
+        }
+    }
+
+    private static String valueOf(String value) {
+        return StringUtils.isBlank(value) ? "" : value;
     }
 }
@@ -4,9 +4,14 @@ package com.example.monilog;
 import com.google.common.collect.Sets;
 import org.apache.commons.lang3.StringUtils;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Proxy;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * @author yp
@@ -16,101 +21,301 @@ class ThreadUtil {
     private static final String PROXY_CLS = "com.sun.proxy.$Proxy";
     //遍历线程栈找业务类时需要排除掉的包(类)前缀
     private final static Set<String> DEFAULT_EXCLUDE_PKGS = Sets.newHashSet("java.lang.Thread", "java", "sun.reflect", PROXY_CLS, "org.springframework", "org.apache", "kong.unirest.apache", "com.jiduauto.monilog", "com.jiduauto.javakit", "okhttp3", "org.elasticsearch.client","retrofit2");
+    /**
+     * 不同的排除前缀组合对应的解析器，组合由调用方写死，数量很少；超过上限后不再缓存
+     */
+    private static final int MAX_RESOLVERS = 64;
+    private static final Map<List<String>, CallerResolver> RESOLVERS = new ConcurrentHashMap<>();
+    private static final FrameWalker WALKER = FrameWalker.create();
+
+    static {
+        // 本组件自身的包名以实际包名为准
+        DEFAULT_EXCLUDE_PKGS.add(ThreadUtil.class.getPackage().getName() + ".");
+    }
 
     /**
-     * 从当前线程栈中，按先后顺序找到指定类的下一个类对应的栈帧，返回找到的第一个栈帧
+     * 从当前线程栈中，按先后顺序找到指定类的下一个类对应的栈帧，返回找到的第一个栈帧。
+     * 栈帧自栈顶逐个遍历，找到结果即停止(Java9+使用StackWalker，不再捕获整个线程栈)
      */
     static StackTraceElement getNextClassFromStack(Class<?> currentCls, String... excludePkgPrefixs) {
+        CallerResolver resolver = getResolver(excludePkgPrefixs);
+        String clsName = currentCls == null ? null : currentCls.getCanonicalName();
+        // 目标类本身被排除时不会出现在过滤后的栈帧中，直接取第一个栈帧
+        if (clsName != null && resolver.isExcluded(clsName)) {
+            clsName = null;
+        }
+        return WALKER.walk(resolver, clsName);
+    }
+
+    private static CallerResolver getResolver(String[] excludePkgPrefixs) {
+        List<String> key = excludePkgPrefixs == null ? Collections.emptyList() : Arrays.asList(excludePkgPrefixs);
+        CallerResolver resolver = RESOLVERS.get(key);
+        if (resolver != null) {
+            return resolver;
+        }
         Set<String> excludes = new HashSet<>(DEFAULT_EXCLUDE_PKGS);
-        if (excludePkgPrefixs != null) {
-            excludes.addAll(Arrays.stream(excludePkgPrefixs).filter(StringUtils::isNotBlank).collect(Collectors.toList()));
+        for (String prefix : key) {
+            if (StringUtils.isNotBlank(prefix)) {
+                excludes.add(prefix);
+            }
+        }
+        resolver = new CallerResolver(excludes);
+        if (RESOLVERS.size() < MAX_RESOLVERS) {
+            CallerResolver existing = RESOLVERS.putIfAbsent(new ArrayList<>(key), resolver);
+            return existing == null ? resolver : existing;
         }
-        List<StackTraceElement> filtered = filterStackTrace(excludes);
+        return resolver;
+    }
 
-        StackTraceElement target = null;
+    /**
+     * 在栈帧序列上查找调用方：找到目标类后返回其后第一个未被排除的栈帧；未指定或未找到目标类时返回第一个未被排除的栈帧
+     */
+    private static <F> StackTraceElement findCaller(Iterator<F> frames, FrameAccessor<F> accessor, CallerResolver resolver, String targetClsName) {
+        StackTraceElement first = null;
         boolean hasFoundTargetClass = false;
-        if (currentCls != null) {
-            String clsName = currentCls.getCanonicalName();
-            for (StackTraceElement s : filtered) {
-                if (clsName.equals(s.getClassName())) {
-                    hasFoundTargetClass = true;
-                    continue;
+        while (frames.hasNext()) {
+            F frame = frames.next();
+            String name = resolver.getDeclaringClassName(accessor.getClassName(frame), accessor.getMethodName(frame));
+            if (name == null) {
+                continue;
+            }
+            if (targetClsName == null) {
+                return toElement(name, accessor.toStackTraceElement(frame));
+            }
+            if (first == null) {
+                first = toElement(name, accessor.toStackTraceElement(frame));
+            }
+            if (targetClsName.equals(name)) {
+                hasFoundTargetClass = true;
+                continue;
+            }
+            if (hasFoundTargetClass) {
+                return toElement(name, accessor.toStackTraceElement(frame));
+            }
+        }
+        return first;
+    }
+
+    private static StackTraceElement toElement(String name, StackTraceElement s) {
+        if (name.equals(s.getClassName())) {
+            return s;
+        }
+        return new StackTraceElement(name, s.getMethodName(), s.getFileName(), s.getLineNumber());
+    }
+
+    /**
+     * 一组排除前缀对应的栈帧解析器：排除前缀编译为前缀树，并按栈帧缓存解析结果(声明类名或被排除)
+     */
+    private static final class CallerResolver {
+        private static final int MAX_CACHED_FRAMES = 8192;
+        private static final String EXCLUDED = "";
+        private final PrefixTrie excludes;
+        /**
+         * key为栈帧类名，代理类为"类名#方法名"
+         */
+        private final Map<String, String> frameCache = new ConcurrentHashMap<>();
+
+        CallerResolver(Set<String> excludes) {
+            this.excludes = new PrefixTrie(excludes);
+        }
+
+        boolean isExcluded(String name) {
+            return excludes.matches(name);
+        }
+
+        /**
+         * 返回栈帧对应的声明类名，被排除时返回null
+         */
+        String getDeclaringClassName(String name, String methodName) {
+            boolean isProxy = name.startsWith(PROXY_CLS);
+            String key = isProxy ? name + '#' + methodName : name;
+            String result = frameCache.get(key);
+            if (result == null) {
+                result = resolve(name, methodName, isProxy);
+                if (frameCache.size() < MAX_CACHED_FRAMES) {
+                    frameCache.put(key, result);
                 }
-                if (hasFoundTargetClass) {
-                    target = s;
-                    break;
+            }
+            return result == EXCLUDED ? null : result;
+        }
+
+        private String resolve(String name, String methodName, boolean isProxy) {
+            if (isProxy) {
+                String targetCls = tryGetProxyTargetCls(name, methodName);
+                if (targetCls != null) {
+                    return targetCls;
                 }
             }
+            String result = name;
+            int idx = name.indexOf('$');
+            if (idx > 0 && name.charAt(idx - 1) != '.') {
+                result = name.substring(0, idx);
+            }
+            return isExcluded(result) ? EXCLUDED : result;
         }
-        if (target == null) {
-            if (!filtered.isEmpty()) {
-                target = filtered.get(0);
+
+        private String tryGetProxyTargetCls(String name, String methodName) {
+            try {
+                Class<?> c = Class.forName(name);
+                if (Proxy.isProxyClass(c)) {
+                    for (Class<?> i : c.getInterfaces()) {
+                        String interfaceName = i.getCanonicalName();
+                        if (isExcluded(interfaceName)) {
+                            continue;
+                        }
+                        if (Arrays.stream(i.getDeclaredMethods()).anyMatch(e -> e.getName().equals(methodName))) {
+                            return interfaceName;
+                        }
+                    }
+                }
+                return null;
+            } catch (Throwable e) {
+                return null;
             }
         }
-        return target;
     }
 
-    private static List<StackTraceElement> filterStackTrace(Set<String> excludes) {
-        List<StackTraceElement> result = new ArrayList<>();
-        StackTraceElement[] origin = Thread.currentThread().getStackTrace();
-        for (StackTraceElement s : origin) {
-            String name = getDeclaringClassName(s, excludes);
-            if (name != null) {
-                if (name.equals(s.getClassName())) {
-                    result.add(s);
-                } else {
-                    result.add(new StackTraceElement(name, s.getMethodName(), s.getFileName(), s.getLineNumber()));
+    /**
+     * 排除前缀树，匹配语义与逐个调用String.startsWith一致
+     */
+    private static final class PrefixTrie {
+        private final Map<Character, PrefixTrie> children = new HashMap<>();
+        private boolean terminal;
+
+        PrefixTrie(Collection<String> prefixes) {
+            for (String prefix : prefixes) {
+                PrefixTrie node = this;
+                for (int i = 0; i < prefix.length(); i++) {
+                    node = node.children.computeIfAbsent(prefix.charAt(i), k -> new PrefixTrie());
                 }
+                node.terminal = true;
             }
         }
-        return result;
+
+        private PrefixTrie() {
+        }
+
+        boolean matches(String target) {
+            PrefixTrie node = this;
+            for (int i = 0; ; i++) {
+                if (node.terminal) {
+                    return true;
+                }
+                if (i >= target.length()) {
+                    return false;
+                }
+                node = node.children.get(target.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private interface FrameAccessor<F> {
+        String getClassName(F frame);
+
+        String getMethodName(F frame);
+
+        StackTraceElement toStackTraceElement(F frame);
     }
 
-    private static String getDeclaringClassName(StackTraceElement st, Set<String> excludes) {
-        String name = st.getClassName();
-        if (name.startsWith(PROXY_CLS)) {
-            String targetCls = tryGetProxyTargetCls(name, st.getMethodName(), excludes);
-            if (targetCls != null) {
-                return targetCls;
+    /**
+     * 栈帧遍历方式：Java9+通过反射使用StackWalker按需遍历，Java8退化为捕获整个线程栈
+     */
+    private static abstract class FrameWalker {
+        abstract StackTraceElement walk(CallerResolver resolver, String targetClsName);
+
+        static FrameWalker create() {
+            try {
+                return new StackWalkerFrameWalker();
+            } catch (Throwable e) {
+                return new ThreadStackFrameWalker();
             }
         }
-        String result = name;
-        String declaringCls = null;
-        if (name.contains("$")) {
-            declaringCls = name.split("\\$")[0];
+    }
+
+    private static final class ThreadStackFrameWalker extends FrameWalker implements FrameAccessor<StackTraceElement> {
+        @Override
+        StackTraceElement walk(CallerResolver resolver, String targetClsName) {
+            return findCaller(Arrays.asList(Thread.currentThread().getStackTrace()).iterator(), this, resolver, targetClsName);
+        }
+
+        @Override
+        public String getClassName(StackTraceElement frame) {
+            return frame.getClassName();
+        }
+
+        @Override
+        public String getMethodName(StackTraceElement frame) {
+            return frame.getMethodName();
         }
-        if (declaringCls != null && !declaringCls.endsWith(".")) {
-            result = declaringCls;
+
+        @Override
+        public StackTraceElement toStackTraceElement(StackTraceElement frame) {
+            return frame;
         }
-        return isExcluded(excludes, result) ? null : result;
     }
 
-    private static String tryGetProxyTargetCls(String name, String methodName, Set<String> excludes) {
-        try {
-            Class<?> c = Class.forName(name);
-            if (Proxy.isProxyClass(c)) {
-                for (Class<?> i : c.getInterfaces()) {
-                    String interfaceName = i.getCanonicalName();
-                    if (isExcluded(excludes, interfaceName)) {
-                        continue;
-                    }
-                    if (Arrays.stream(i.getDeclaredMethods()).anyMatch(e -> e.getName().equals(methodName))) {
-                        return interfaceName;
-                    }
-                }
+    private static final class StackWalkerFrameWalker extends FrameWalker implements FrameAccessor<Object> {
+        private final Object walker;
+        private final MethodHandle walkMethod;
+        private final MethodHandle getClassName;
+        private final MethodHandle getMethodName;
+        private final MethodHandle toStackTraceElement;
+
+        StackWalkerFrameWalker() throws Exception {
+            // walk方法是caller-sensitive的，须使用本类的lookup
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> walkerCls = Class.forName("java.lang.StackWalker");
+            Class<?> frameCls = Class.forName("java.lang.StackWalker$StackFrame");
+            this.walker = walkerCls.getMethod("getInstance").invoke(null);
+            this.walkMethod = lookup.findVirtual(walkerCls, "walk", MethodType.methodType(Object.class, Function.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, Function.class));
+            this.getClassName = lookup.findVirtual(frameCls, "getClassName", MethodType.methodType(String.class))
+                    .asType(MethodType.methodType(String.class, Object.class));
+            this.getMethodName = lookup.findVirtual(frameCls, "getMethodName", MethodType.methodType(String.class))
+                    .asType(MethodType.methodType(String.class, Object.class));
+            this.toStackTraceElement = lookup.findVirtual(frameCls, "toStackTraceElement", MethodType.methodType(StackTraceElement.class))
+                    .asType(MethodType.methodType(StackTraceElement.class, Object.class));
+        }
+
+        @Override
+        StackTraceElement walk(CallerResolver resolver, String targetClsName) {
+            Function<Stream<Object>, StackTraceElement> fn = frames -> findCaller(frames.iterator(), this, resolver, targetClsName);
+            try {
+                Object caller = walkMethod.invokeExact(walker, (Function) fn);
+                return (StackTraceElement) caller;
+            } catch (Throwable e) {
+                return findCaller(Arrays.asList(Thread.currentThread().getStackTrace()).iterator(), new ThreadStackFrameWalker(), resolver, targetClsName);
+            }
+        }
+
+        @Override
+        public String getClassName(Object frame) {
+            try {
+                return (String) getClassName.invokeExact(frame);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public String getMethodName(Object frame) {
+            try {
+                return (String) getMethodName.invokeExact(frame);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
             }
-            return null;
-        } catch (Throwable e) {
-            return null;
         }
-    }
 
-    private static boolean isExcluded(Set<String> excludes, String target) {
-        for (String excludePkgPrefix : excludes) {
-            if (target.startsWith(excludePkgPrefix)) {
-                return true;
+        @Override
+        public StackTraceElement toStackTraceElement(Object frame) {
+            try {
+                return (StackTraceElement) toStackTraceElement.invokeExact(frame);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
             }
         }
-        return false;
     }
 }
@@ -18,16 +18,16 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerExecutionChain;
 import org.springframework.web.servlet.HandlerMapping;
-import org.springframework.web.util.ContentCachingResponseWrapper;
-import org.springframework.web.util.WebUtils;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.example.monilog.StringUtil.checkPathMatch;
 
@@ -41,12 +41,14 @@ class WebMoniLogInterceptor extends OncePerRequestFilter {
      */
     private static final String JIDU_JNS_HEADER = "X-JIDU-SERVICENAME";
     private static final String USER_AGENT = "User-Agent";
+    private static final int DEFAULT_MAX_TEXT_LEN = 10000;
+    private static final int DEFAULT_RESPONSE_CAPTURE_LIMIT = 50000;
     private final MoniLogProperties moniLogProperties;
     private static List<HandlerMapping> handlerMappings;
+    private static final Map<Class<?>, Map<Method, HandlerMeta>> HANDLER_METAS = new ConcurrentHashMap<>(64);
 
     @SneakyThrows
     @Override
-    @SuppressWarnings("unchecked")
     public void doFilterInternal(@NonNull HttpServletRequest req, @NonNull HttpServletResponse resp, @NonNull FilterChain chain) throws IOException, ServletException {
         RequestInfo reqInfo = checkEnable(req);
         if (reqInfo == null) {
@@ -57,44 +59,34 @@ class WebMoniLogInterceptor extends OncePerRequestFilter {
         HttpServletRequest request = reqInfo.wrappedRequest;
         HandlerMethod method = reqInfo.method;
         Map<String, String> requestHeaderMap = reqInfo.requestHeaderMap;
+        HandlerMeta meta = getHandlerMeta(method);
         MoniLogParams logParams = new MoniLogParams();
         try {
-            MoniLogTags logTags = ReflectUtil.getAnnotation(MoniLogTags.class, method.getBeanType(), method.getMethod());
-            if (logTags != null) {
-                logParams.setUserMetricName(logTags.metricName());
-            }
-            List<String> tagList = StringUtil.getTagList(logTags);
-            if (tagList != null && tagList.size() > 1) {
-                logParams.setUserTags(tagList.toArray(new String[0]));
+            logParams.setUserMetricName(meta.userMetricName);
+            if (meta.userTags != null) {
+                // 请求tag会就地替换占位符，每个请求使用副本
+                logParams.setUserTags(meta.userTags.clone());
             }
             logParams.setServiceCls(method.getBeanType());
-            logParams.setService(ReflectUtil.getSimpleClassName(method.getBeanType()));
-            logParams.setAction(method.getMethod().getName());
+            logParams.setService(meta.service);
+            logParams.setAction(meta.action);
             TagBuilder tagBuilder = TagBuilder.of("url", getUrlWithoutPathParam(request)).add("method", request.getMethod());
             logParams.setTags(tagBuilder.toArray());
 
-            Map<String, Object> requestBodyMap = new HashMap<>(3);
             logParams.setLogPoint(reqInfo.logPoint);
-            JSONObject jsonObject = formatRequestInfo(isMultipart, request, requestHeaderMap);
-            Object o = jsonObject.get("body");
-            if (o instanceof Map) {
-                requestBodyMap.putAll((Map<String, Object>) o);
-            }
-            logParams.setInput(new Object[]{jsonObject});
             logParams.setMsgCode(ErrorEnum.SUCCESS.name());
             logParams.setMsgInfo(ErrorEnum.SUCCESS.getMsg());
             logParams.setSuccess(true);
-            dealRequestTags(request, logParams, requestHeaderMap, requestBodyMap);
         } catch (Exception e) {
             MoniLogUtil.innerDebug("dealRequestTags error", e);
         }
 
         logParams.setSuccess(true);
         Exception bizException = null;
-        String responseBodyStr = "";
+        ResponseWrapper wrapperResponse = null;
         long startTime = System.currentTimeMillis();
         try {
-            ContentCachingResponseWrapper wrapperResponse = new ContentCachingResponseWrapper(resp);
+            wrapperResponse = new ResponseWrapper(resp, getResponseCaptureLimit(), !isAsyncLog());
             try {
                 chain.doFilter(request, wrapperResponse);
             } catch (Exception e) {
@@ -102,17 +94,7 @@ class WebMoniLogInterceptor extends OncePerRequestFilter {
                 bizException = e;
                 throw bizException;
             }
-            responseBodyStr = getResponseBody(wrapperResponse);
-            logParams.setOutput(responseBodyStr);
-            wrapperResponse.copyBodyToResponse();
-            JSON json = StringUtil.tryConvert2Json(responseBodyStr);
-            if (json != null) {
-                logParams.setOutput(json);
-            }
-            if (json instanceof JSONObject) {
-                LogParser cl = ReflectUtil.getAnnotation(LogParser.class, method.getBeanType(), method.getMethod());
-                ResultParseUtil.parseResultAndSet(cl, json, logParams);
-            }
+            dealResponse(wrapperResponse, meta.logParser, logParams, requestHeaderMap);
         } catch (ClientAbortException e) {
             // 解析请求时，客户端断开连接，异常直接抛出去
             logParams.setSuccess(false);
@@ -135,12 +117,153 @@ class WebMoniLogInterceptor extends OncePerRequestFilter {
                 MoniLogUtil.innerDebug("webMoniLogInterceptor process error", e);
             }
         } finally {
-            if (logParams.isSuccess() && StringUtils.isNotBlank(responseBodyStr) && isJson(requestHeaderMap)) {
-                logParams.setTags(StringUtil.processUserTag(responseBodyStr, logParams.getTags()));
-            }
+            // 请求体在业务读取请求流时才被捕获，因此请求信息与请求tag在业务处理之后再解析
+            dealRequestInfo(isMultipart, request, logParams, requestHeaderMap);
             logParams.setCost(System.currentTimeMillis() - startTime);
             MoniLogUtil.log(logParams);
+            // 异步请求的请求流可能仍在被读取、响应可能仍在被写入，此时不归还捕获缓冲区
+            if (!request.isAsyncStarted()) {
+                if (request instanceof RequestWrapper) {
+                    ((RequestWrapper) request).release();
+                }
+                if (wrapperResponse != null) {
+                    wrapperResponse.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析响应：响应体最多被解析一次，结果解析与响应tag共用同一次解析结果；二者都只访问字段时，只从已捕获的响应体中提取这些字段，
+     * 不再解析整个文档；都不需要时不解析，响应体延迟到日志输出时才解码
+     */
+    private void dealResponse(ResponseWrapper response, LogParser cl, MoniLogParams logParams, Map<String, String> requestHeaderMap) {
+        if (HttpUtil.isDownstream(getResponseHeaders(response))) {
+            logParams.setOutput(CaptureBuffer.BINARY_DATA);
+            return;
+        }
+        CaptureBuffer captured = response.getCaptured();
+        if (captured.size() == 0) {
+            return;
+        }
+        Charset charset = response.getCharset();
+        int maxTextLen = getMaxTextLen();
+        byte[] body = captured.array();
+        int len = captured.size();
+        boolean complete = !captured.isTruncated();
+        if (!JsonPrefixExtractor.isObject(body, len)) {
+            logParams.setOutput(LazyLogArg.of(() -> formatResponse(captured, charset, maxTextLen)));
+            return;
         }
+        // 使用响应中的字段替换tag中的{xxx}、${xxx}，需要完整的响应体
+        List<String> tagFields = complete && isJson(requestHeaderMap) ? getPlaceholderNames(logParams.getTags()) : null;
+        JsonPrefixExtractor.FieldSet fields = ResultParseUtil.getFieldSet(cl == null ? null : cl.resultParseStrategy(), cl == null ? null : cl.boolExpr(),
+                cl == null ? null : cl.errorCodeExpr(), cl == null ? null : cl.errorMsgExpr(), tagFields);
+        JSONObject json = null;
+        if (fields != null) {
+            // 响应体在找齐字段前被截断时返回null，保留按http状态得到的结果，不按缺少的字段判定结果
+            json = JsonPrefixExtractor.extract(body, len, charset, fields);
+            logParams.setOutput(LazyLogArg.of(() -> formatResponse(captured, charset, maxTextLen)));
+        } else if (complete) {
+            // 需要完整的文档时只解析一次，同时作为日志输出
+            JSON parsed = StringUtil.tryConvert2Json(captured.decode(charset, len));
+            json = parsed instanceof JSONObject ? (JSONObject) parsed : null;
+            logParams.setOutput(json != null ? json : LazyLogArg.of(() -> formatResponse(captured, charset, maxTextLen)));
+        } else {
+            logParams.setOutput(LazyLogArg.of(() -> formatResponse(captured, charset, maxTextLen)));
+        }
+        if (json == null) {
+            return;
+        }
+        ResultParseUtil.parseResultAndSet(cl, json, logParams);
+        if (logParams.isSuccess() && tagFields != null && !tagFields.isEmpty() && !JsonPrefixExtractor.isEmptyObject(body, len)) {
+            logParams.setTags(StringUtil.processUserTag(getTagValues(json, tagFields), logParams.getTags()));
+        }
+    }
+
+    /**
+     * tag中占位符引用的字段名
+     */
+    private static List<String> getPlaceholderNames(String[] tags) {
+        List<String> names = new ArrayList<>(2);
+        for (int i = 0; tags != null && i < tags.length; i++) {
+            String tag = tags[i];
+            if ((tag.startsWith("{") || tag.startsWith("${")) && tag.endsWith("}")) {
+                String name = tag.substring(tag.startsWith("${") ? 2 : 1, tag.length() - 1);
+                if (!names.contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 按tag字段取值，与把响应体转换为Map&lt;String, String&gt;的取值保持一致
+     */
+    private static Map<String, String> getTagValues(JSONObject json, List<String> tagFields) {
+        Map<String, String> values = new HashMap<>(tagFields.size() << 1);
+        for (String field : tagFields) {
+            Object value = json.get(field);
+            values.put(field, value == null || value instanceof String ? (String) value : JSON.toJSONString(value));
+        }
+        return values;
+    }
+
+    private static Object formatResponse(CaptureBuffer captured, Charset charset, int maxTextLen) {
+        if (captured.isTruncated()) {
+            return captured.decode(charset, maxTextLen) + "...";
+        }
+        String body = captured.decode(charset, captured.size());
+        JSON json = StringUtil.tryConvert2Json(body);
+        return json == null ? body : json;
+    }
+
+    /**
+     * 解析请求信息：请求体延迟到日志输出时才解码；仅当用户tag需要从请求体取值时立即解析
+     */
+    @SuppressWarnings("unchecked")
+    private void dealRequestInfo(boolean isMultipart, HttpServletRequest request, MoniLogParams logParams, Map<String, String> requestHeaderMap) {
+        try {
+            // 日志可能在请求结束后由异步线程输出，请求对象届时可能已被容器回收，因此先取出所需信息
+            String requestUri = request.getRequestURI();
+            Map<String, String[]> parameterMap = request.getParameterMap();
+            LazyLogArg input = LazyLogArg.of(() -> formatRequestInfo(isMultipart, request, requestUri, parameterMap, requestHeaderMap));
+            logParams.setInput(new Object[]{input});
+            if (!hasPlaceholderTag(logParams.getUserTags())) {
+                return;
+            }
+            Map<String, Object> requestBodyMap = new HashMap<>(3);
+            Object o = ((JSONObject) input.get()).get("body");
+            if (o instanceof Map) {
+                requestBodyMap.putAll((Map<String, Object>) o);
+            }
+            dealRequestTags(request, logParams, requestHeaderMap, requestBodyMap);
+        } catch (Exception e) {
+            MoniLogUtil.innerDebug("dealRequestTags error", e);
+        }
+    }
+
+    private static boolean hasPlaceholderTag(String[] tags) {
+        for (int i = 0; tags != null && i < tags.length; i++) {
+            if ((tags[i].startsWith("{") || tags[i].startsWith("${")) && tags[i].endsWith("}")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 同一个HandlerMethod的注解信息只解析一次
+     */
+    private static HandlerMeta getHandlerMeta(HandlerMethod method) {
+        Map<Method, HandlerMeta> metas = HANDLER_METAS.computeIfAbsent(method.getBeanType(), k -> new ConcurrentHashMap<>(16));
+        HandlerMeta meta = metas.get(method.getMethod());
+        if (meta == null) {
+            meta = new HandlerMeta(method.getBeanType(), method.getMethod());
+            metas.put(method.getMethod(), meta);
+        }
+        return meta;
     }
 
     private RequestInfo checkEnable(HttpServletRequest req) {
@@ -176,7 +299,7 @@ class WebMoniLogInterceptor extends OncePerRequestFilter {
                 }
             }
             boolean isMultipart = ServletFileUpload.isMultipartContent(req);
-            HttpServletRequest request = isMultipart ? req : new RequestWrapper(req);
+            HttpServletRequest request = isMultipart ? req : newRequestWrapper(req);
 
             RequestInfo reqInfo = new RequestInfo();
             reqInfo.requestHeaderMap = requestHeaderMap;
@@ -191,6 +314,29 @@ class WebMoniLogInterceptor extends OncePerRequestFilter {
         }
     }
 
+    private RequestWrapper newRequestWrapper(HttpServletRequest req) {
+        return new RequestWrapper(req, getMaxTextLen(), !isAsyncLog());
+    }
+
+    private int getMaxTextLen() {
+        MoniLogProperties.PrinterProperties printerCfg = moniLogProperties.getPrinter();
+        Integer maxTextLen = printerCfg == null ? null : printerCfg.getMaxTextLen();
+        return maxTextLen == null ? DEFAULT_MAX_TEXT_LEN : maxTextLen;
+    }
+
+    private int getResponseCaptureLimit() {
+        MoniLogProperties.WebProperties webProperties = moniLogProperties.getWeb();
+        return webProperties == null ? DEFAULT_RESPONSE_CAPTURE_LIMIT : webProperties.getMaxResponseCaptureBytes();
+    }
+
+    /**
+     * 异步输出日志时请求/响应体在后台线程解码，捕获缓冲区不能归还给当前线程复用
+     */
+    private boolean isAsyncLog() {
+        MoniLogProperties.AsyncProperties asyncCfg = moniLogProperties.getAsync();
+        return asyncCfg != null && asyncCfg.isEnable();
+    }
+
     @SuppressWarnings("all")
     private static String getUrlWithoutPathParam(HttpServletRequest request) {
         String originUrl = HttpUtil.extractPath(request.getRequestURI());
@@ -323,40 +469,11 @@ class WebMoniLogInterceptor extends OncePerRequestFilter {
         logParams.setUserTags(oriTags);
     }
 
-    private JSONObject formatRequestInfo(boolean isMultipart, HttpServletRequest request, Map<String, String> requestHeaderMap) {
-        Map<String, String[]> parameterMap = request.getParameterMap();
+    private static JSONObject formatRequestInfo(boolean isMultipart, HttpServletRequest request, String requestUri, Map<String, String[]> parameterMap, Map<String, String> requestHeaderMap) {
         String requestBodyParams = isMultipart ? "Binary data" : ((RequestWrapper) request).getBodyString();
-        return HttpRequestData.of1(request.getRequestURI(), requestBodyParams, parameterMap, requestHeaderMap).toJSON();
+        return HttpRequestData.of1(requestUri, requestBodyParams, parameterMap, requestHeaderMap).toJSON();
     }
 
-    private static String getResponseBody(ContentCachingResponseWrapper response) {
-        Map<String, String> responseHeaders = getResponseHeaders(response);
-        if (HttpUtil.isDownstream(responseHeaders)) {
-            return "Binary data";
-        }
-        ContentCachingResponseWrapper wrapper = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
-        if (wrapper != null) {
-            byte[] buf = wrapper.getContentAsByteArray();
-            if (buf.length == 0) {
-                return null;
-            }
-            String payload;
-            // 限制length字节数组大于5w时不解析
-            if (buf.length > 50000) {
-                payload = "[Data too long length:" + buf.length + "]";
-                return payload;
-            }
-            try {
-                payload = new String(buf, wrapper.getCharacterEncoding());
-            } catch (UnsupportedEncodingException e) {
-                payload = "[unknown]";
-            }
-            return payload;
-        }
-        return null;
-    }
-
-
     private static LogPoint parseLogPoint(Map<String, String> headerMap) {
         // 为空返回不知道
         if (MapUtils.isEmpty(headerMap)) {
@@ -377,6 +494,30 @@ class WebMoniLogInterceptor extends OncePerRequestFilter {
         return LogPoint.http_server;
     }
 
+    /**
+     * HandlerMethod上与日志相关的注解信息
+     */
+    private static final class HandlerMeta {
+        final String userMetricName;
+        /**
+         * 用户tag模板，使用时须复制
+         */
+        final String[] userTags;
+        final LogParser logParser;
+        final String service;
+        final String action;
+
+        HandlerMeta(Class<?> beanType, Method method) {
+            MoniLogTags logTags = ReflectUtil.getAnnotation(MoniLogTags.class, beanType, method);
+            this.userMetricName = logTags == null ? null : logTags.metricName();
+            List<String> tagList = StringUtil.getTagList(logTags);
+            this.userTags = tagList != null && tagList.size() > 1 ? tagList.toArray(new String[0]) : null;
+            this.logParser = ReflectUtil.getAnnotation(LogParser.class, beanType, method);
+            this.service = ReflectUtil.getSimpleClassName(beanType);
+            this.action = method.getName();
+        }
+    }
+
     private static class RequestInfo {
         Map<String, String> requestHeaderMap;
         HandlerMethod method;